@@ -0,0 +1,505 @@
+package Controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import Model.Account;
+import Model.Message;
+import Model.MessageChange;
+import io.javalin.json.JsonMapper;
+
+/**
+ * The application's JSON codec. Account and Message, and lists of them, are read and written field by field with
+ * Jackson's streaming parser and generator, so no reflection or databind serializers are involved and the parser
+ * reads straight from the request stream. Jackson recycles the parser and generator buffers between calls on the
+ * same thread. Any other type falls back to one shared ObjectMapper.
+ *
+ * The same field-by-field code also reads and writes the binary formats Smile and CBOR, through Jackson's parsers and
+ * generators for them, so the field names are the same in every format. See Format.
+ *
+ * An instance is installed as Javalin's JsonMapper, so context.json and context.bodyAsClass go through it; handlers
+ * can also call the static read and write methods directly.
+ */
+public final class JsonCodec implements JsonMapper {
+    private static final JsonFactory JSON_FACTORY = Format.JSON.factory;
+    private static final ObjectMapper FALLBACK = Format.JSON.fallback;
+
+    /**
+     * The body formats the codec reads and writes, each with its media type
+     */
+    public enum Format {
+        JSON("application/json", new JsonFactory()),
+        SMILE("application/x-jackson-smile", new SmileFactory()),
+        CBOR("application/cbor", new CBORFactory());
+
+        private final String mediaType;
+        private final JsonFactory factory;
+        private final ObjectMapper fallback;
+
+        Format(String mediaType, JsonFactory factory) {
+            this.mediaType = mediaType;
+            // content is not closed automatically, so a stream that fails part way is left visibly unterminated
+            this.factory = factory
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT)
+                    .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            this.fallback = new ObjectMapper(this.factory);
+        }
+
+        /**
+         * @return the media type sent in Content-Type for this format
+         */
+        public String mediaType() {
+            return mediaType;
+        }
+
+        /**
+         * @param contentType a request's Content-Type header, or null
+         * @return the format it names, or JSON if it names none
+         */
+        public static Format forContentType(String contentType) {
+            if (contentType != null) {
+                Format format = forMediaType(contentType);
+                if (format != null) {
+                    return format;
+                }
+            }
+            return JSON;
+        }
+
+        /**
+         * @param accept a request's Accept header, or null
+         * @return the format the header gives the highest quality, the earliest one on a tie, or JSON if it accepts
+         *         none or is absent. A wildcard range stands for JSON.
+         */
+        public static Format forAccept(String accept) {
+            if (accept == null) {
+                return JSON;
+            }
+            Format best = JSON;
+            double bestQuality = 0;
+            for (String range : accept.split(",")) {
+                Format format = forMediaType(range);
+                if (format == null && isWildcard(range)) {
+                    format = JSON;
+                }
+                if (format == null) {
+                    continue;
+                }
+                double quality = quality(range);
+                if (quality > bestQuality) {
+                    best = format;
+                    bestQuality = quality;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * @return the range's q parameter, 1 when it has none, or 0 when it is not a number between 0 and 1
+         */
+        private static double quality(String range) {
+            for (String parameter : range.split(";")) {
+                int equals = parameter.indexOf('=');
+                if (equals >= 0 && parameter.substring(0, equals).trim().equalsIgnoreCase("q")) {
+                    try {
+                        double quality = Double.parseDouble(parameter.substring(equals + 1).trim());
+                        return quality >= 0 && quality <= 1 ? quality : 0;
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+            return 1;
+        }
+
+        private static boolean isWildcard(String range) {
+            int parameters = range.indexOf(';');
+            String type = (parameters >= 0 ? range.substring(0, parameters) : range).trim();
+            return type.equals("*/*") || type.equalsIgnoreCase("application/*");
+        }
+
+        private static Format forMediaType(String mediaType) {
+            int parameters = mediaType.indexOf(';');
+            String type = (parameters >= 0 ? mediaType.substring(0, parameters) : mediaType).trim()
+                    .toLowerCase(Locale.ROOT);
+            for (Format format : values()) {
+                if (format.mediaType.equals(type)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Override
+    public String toJsonString(Object obj, Type type) {
+        if (obj instanceof String) {
+            return (String) obj;
+        }
+        StringWriter writer = new StringWriter(128);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+            writeValue(generator, obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    @Override
+    public InputStream toJsonStream(Object obj, Type type) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            writeValue(generator, obj);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T fromJsonString(String json, Type type) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return (T) readValue(parser, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T fromJsonStream(InputStream json, Type type) {
+        try (JsonParser parser = JSON_FACTORY.createParser(json)) {
+            return (T) readValue(parser, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param out the stream the generator writes to; it is not closed with the generator
+     * @return a generator sharing the codec's buffer recycling
+     * @throws IOException if the generator cannot be created
+     */
+    public static JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return JSON_FACTORY.createGenerator(out);
+    }
+
+    /**
+     * @param out the stream the generator writes to; it is not closed with the generator
+     * @param format the format to write
+     * @return a generator for the format
+     * @throws IOException if the generator cannot be created
+     */
+    public static JsonGenerator createGenerator(OutputStream out, Format format) throws IOException {
+        return format.factory.createGenerator(out);
+    }
+
+    /**
+     * Writes a Message, an Account, a list of messages or any other value Jackson can serialize
+     * @param out the stream to write to; it is not closed
+     * @param value the value
+     * @param format the format to write
+     * @throws IOException if the value cannot be written
+     */
+    public static void write(OutputStream out, Object value, Format format) throws IOException {
+        try (JsonGenerator generator = format.factory.createGenerator(out)) {
+            writeValue(generator, value);
+        }
+    }
+
+    /**
+     * @param in a JSON object, or null
+     * @return the message, or null if the JSON is null
+     * @throws IOException if the input is not a JSON object or cannot be read
+     */
+    public static Message readMessage(InputStream in) throws IOException {
+        return readMessage(in, Format.JSON);
+    }
+
+    /**
+     * @param in an object in the given format, or null
+     * @param format the format of the input
+     * @return the message, or null if the input is null
+     * @throws IOException if the input is not an object or cannot be read
+     */
+    public static Message readMessage(InputStream in, Format format) throws IOException {
+        try (JsonParser parser = format.factory.createParser(in)) {
+            return readMessage(parser, parser.nextToken());
+        }
+    }
+
+    /**
+     * @param in a JSON array of message objects
+     * @return the messages, with null for any null element, or null if the input is not an array
+     * @throws IOException if an element is not a JSON object or the input cannot be read
+     */
+    public static Message[] readMessages(InputStream in) throws IOException {
+        return readMessages(in, Format.JSON);
+    }
+
+    /**
+     * @param in an array of message objects in the given format
+     * @param format the format of the input
+     * @return the messages, with null for any null element, or null if the input is not an array
+     * @throws IOException if an element is not an object or the input cannot be read
+     */
+    public static Message[] readMessages(InputStream in, Format format) throws IOException {
+        try (JsonParser parser = format.factory.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                return null;
+            }
+            List<Message> messages = new ArrayList<>();
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                messages.add(readMessage(parser, token));
+            }
+            return messages.toArray(new Message[0]);
+        }
+    }
+
+    /**
+     * @param in a JSON object, or null
+     * @return the account, or null if the JSON is null
+     * @throws IOException if the input is not a JSON object or cannot be read
+     */
+    public static Account readAccount(InputStream in) throws IOException {
+        return readAccount(in, Format.JSON);
+    }
+
+    /**
+     * @param in an object in the given format, or null
+     * @param format the format of the input
+     * @return the account, or null if the input is null
+     * @throws IOException if the input is not an object or cannot be read
+     */
+    public static Account readAccount(InputStream in, Format format) throws IOException {
+        try (JsonParser parser = format.factory.createParser(in)) {
+            return readAccount(parser, parser.nextToken());
+        }
+    }
+
+    /**
+     * @param message the message to encode
+     * @return the message as UTF-8 JSON
+     * @throws IOException if the message cannot be encoded
+     */
+    public static byte[] encode(Message message) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + message.getMessage_text().length());
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            writeMessage(generator, message);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes one message as a JSON object
+     * @param generator the generator to write to
+     * @param message the message
+     * @throws IOException if the message cannot be written
+     */
+    public static void writeMessage(JsonGenerator generator, Message message) throws IOException {
+        writeMessage(generator, message.getMessage_id(), message.getPosted_by(), message.getMessage_text(),
+                message.getTime_posted_epoch());
+    }
+
+    /**
+     * Writes one message, given as its column values, as a JSON object
+     * @param generator the generator to write to
+     * @throws IOException if the message cannot be written
+     */
+    public static void writeMessage(JsonGenerator generator, int messageId, int postedBy, String messageText,
+            long timePostedEpoch) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("message_id", messageId);
+        generator.writeNumberField("posted_by", postedBy);
+        generator.writeStringField("message_text", messageText);
+        generator.writeNumberField("time_posted_epoch", timePostedEpoch);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes one message change as a JSON object, with the message nested under "message"
+     * @param generator the generator to write to
+     * @param change the change
+     * @throws IOException if the change cannot be written
+     */
+    public static void writeChange(JsonGenerator generator, MessageChange change) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("seq", change.getSeq());
+        generator.writeStringField("type", change.getType());
+        generator.writeFieldName("message");
+        writeMessage(generator, change.getMessage());
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes one account as a JSON object
+     * @param generator the generator to write to
+     * @param account the account
+     * @throws IOException if the account cannot be written
+     */
+    public static void writeAccount(JsonGenerator generator, Account account) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("account_id", account.getAccount_id());
+        generator.writeStringField("username", account.getUsername());
+        generator.writeStringField("password", account.getPassword());
+        generator.writeEndObject();
+    }
+
+    private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+        if (value instanceof Message) {
+            writeMessage(generator, (Message) value);
+        } else if (value instanceof MessageChange) {
+            writeChange(generator, (MessageChange) value);
+        } else if (value instanceof Account) {
+            writeAccount(generator, (Account) value);
+        } else if (value instanceof List && isMessageList((List<?>) value)) {
+            generator.writeStartArray();
+            for (Object message : (List<?>) value) {
+                writeMessage(generator, (Message) message);
+            }
+            generator.writeEndArray();
+        } else {
+            // the generator's codec is the ObjectMapper of its own format
+            generator.getCodec().writeValue(generator, value);
+        }
+    }
+
+    private static boolean isMessageList(List<?> list) {
+        for (Object element : list) {
+            if (!(element instanceof Message)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object readValue(JsonParser parser, Type type) throws IOException {
+        if (type == Message.class) {
+            return readMessage(parser, parser.nextToken());
+        }
+        if (type == Account.class) {
+            return readAccount(parser, parser.nextToken());
+        }
+        return FALLBACK.readValue(parser, FALLBACK.constructType(type));
+    }
+
+    private static Message readMessage(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expectObject(parser, token);
+        Message message = new Message();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "message_id":
+                    message.setMessage_id(readInt(parser));
+                    break;
+                case "posted_by":
+                    message.setPosted_by(readInt(parser));
+                    break;
+                case "message_text":
+                    message.setMessage_text(readText(parser));
+                    break;
+                case "time_posted_epoch":
+                    message.setTime_posted_epoch(readLong(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return message;
+    }
+
+    private static Account readAccount(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        expectObject(parser, token);
+        Account account = new Account();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "account_id":
+                    account.setAccount_id(readInt(parser));
+                    break;
+                case "username":
+                    account.setUsername(readText(parser));
+                    break;
+                case "password":
+                    account.setPassword(readText(parser));
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return account;
+    }
+
+    /**
+     * Field readers only accept the token type the field holds, or null for its default, so a body such as
+     * {"posted_by":"abc"} is rejected instead of being read as posted_by 0.
+     */
+    private static int readInt(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getIntValue();
+        }
+        expectNull(parser, token, "an integer");
+        return 0;
+    }
+
+    private static long readLong(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NUMBER_INT) {
+            return parser.getLongValue();
+        }
+        expectNull(parser, token, "an integer");
+        return 0;
+    }
+
+    private static String readText(JsonParser parser) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        expectNull(parser, token, "a string");
+        return null;
+    }
+
+    private static void expectNull(JsonParser parser, JsonToken token, String expected) throws IOException {
+        if (token != JsonToken.VALUE_NULL) {
+            throw new JsonParseException(parser,
+                    "Expected " + expected + " for " + parser.getCurrentName() + " but found " + token);
+        }
+    }
+
+    private static void expectObject(JsonParser parser, JsonToken token) throws JsonParseException {
+        if (token != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected a JSON object but found " + token);
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package Controller;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import Model.MessageChange;
+import Util.BroadcastRing;
+import io.javalin.websocket.WsConfig;
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.StatusCode;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+/**
+ * Pushes message changes to WebSocket subscribers as they happen. Each change is sent as a JSON text frame holding
+ * its seq, its type (created, updated or deleted) and the message.
+ *
+ * Changes are read from the message service's ring of recent changes, so writers only ever append to the ring and
+ * never wait for a subscriber. One dispatcher thread follows the ring with a cursor per subscriber and hands frames
+ * to Jetty's asynchronous send, encoding each change once however many subscribers receive it, so subscribers cost
+ * no thread while connected. A subscriber may have at most maxPendingSends frames that Jetty has not finished
+ * writing; beyond that it is skipped until it catches up. A subscriber whose cursor falls so far behind that its next
+ * change has left the ring is sent {"type":"resync","seq":head} and moved to the head, so it can reload what it missed
+ * over HTTP, or is disconnected if it still has frames stuck in flight.
+ *
+ * The dispatcher also pings every subscriber every pingIntervalMillis, so idle connections are kept open and dead
+ * ones are found.
+ */
+public class LiveFeed implements AutoCloseable {
+    private final BroadcastRing<MessageChange> changes;
+    private final int maxPendingSends;
+    private final long pingIntervalNanos;
+    private final Map<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+    private final Runnable wake = this::signal;
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    /**
+     * Text of recently sent changes, indexed like the ring; only the dispatcher touches these
+     */
+    private final String[] encoded;
+    private final long[] encodedSeq;
+    private final JsonCodec json = new JsonCodec();
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * @param changes the ring of message changes to follow
+     * @param maxPendingSends most frames a subscriber may have in flight before it is skipped
+     * @param pingIntervalMillis time between keep-alive pings
+     */
+    public LiveFeed(BroadcastRing<MessageChange> changes, int maxPendingSends, long pingIntervalMillis) {
+        this.changes = changes;
+        this.maxPendingSends = maxPendingSends;
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis);
+        this.encoded = new String[changes.capacity()];
+        this.encodedSeq = new long[changes.capacity()];
+        this.dispatcher = new Thread(this::dispatch, "live-feed");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+        changes.addListener(wake);
+    }
+
+    /**
+     * Registers the feed's handlers on a WebSocket endpoint
+     * @param ws the endpoint's configuration
+     */
+    public void configure(WsConfig ws) {
+        ws.onConnect(this::subscribe);
+        ws.onClose(context -> subscribers.remove(context.getSessionId()));
+        ws.onError(context -> subscribers.remove(context.getSessionId()));
+    }
+
+    private void subscribe(WsContext context) {
+        // a new subscriber sees changes from the moment it connected
+        subscribers.put(context.getSessionId(), new Subscriber(context.getSessionId(), context.session, changes.head()));
+    }
+
+    private void signal() {
+        if (!signalled.getAndSet(true)) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void dispatch() {
+        long nextPing = System.nanoTime() + pingIntervalNanos;
+        while (!closed) {
+            long now = System.nanoTime();
+            if (now - nextPing >= 0) {
+                for (Subscriber subscriber : subscribers.values()) {
+                    try {
+                        subscriber.session.getRemote().sendPing(ByteBuffer.allocate(0), subscriber.pingCallback);
+                    } catch (RuntimeException e) {
+                        subscribers.remove(subscriber.id);
+                    }
+                }
+                nextPing = now + pingIntervalNanos;
+            }
+            if (!signalled.getAndSet(false)) {
+                LockSupport.parkNanos(this, nextPing - now);
+                continue;
+            }
+            long head = changes.head();
+            for (Subscriber subscriber : subscribers.values()) {
+                try {
+                    deliver(subscriber, head);
+                } catch (RuntimeException e) {
+                    // one broken session must not stop the feed for everyone else
+                    subscribers.remove(subscriber.id);
+                }
+            }
+        }
+    }
+
+    private void deliver(Subscriber subscriber, long head) {
+        while (subscriber.cursor < head && subscriber.pending.get() < maxPendingSends) {
+            long seq = subscriber.cursor + 1;
+            MessageChange change = changes.get(seq);
+            if (change == null) {
+                if (subscriber.pending.get() > 0) {
+                    dropped.increment();
+                    subscribers.remove(subscriber.id);
+                    subscriber.session.close(StatusCode.TRY_AGAIN_LATER, "subscriber too slow");
+                    return;
+                }
+                resyncs.increment();
+                send(subscriber, "{\"type\":\"resync\",\"seq\":" + head + "}");
+                subscriber.cursor = head;
+                return;
+            }
+            send(subscriber, encode(seq, change));
+            subscriber.cursor = seq;
+        }
+    }
+
+    private void send(Subscriber subscriber, String text) {
+        subscriber.pending.incrementAndGet();
+        subscriber.session.getRemote().sendString(text, subscriber);
+        sent.increment();
+    }
+
+    private String encode(long seq, MessageChange change) {
+        int slot = (int) seq & (encoded.length - 1);
+        if (encodedSeq[slot] != seq) {
+            encoded[slot] = json.toJsonString(change, MessageChange.class);
+            encodedSeq[slot] = seq;
+        }
+        return encoded[slot];
+    }
+
+    /**
+     * @return number of connected subscribers
+     */
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * @return number of frames handed to subscribers
+     */
+    public long sentCount() {
+        return sent.sum();
+    }
+
+    /**
+     * @return number of times a subscriber fell out of the ring and was resynced
+     */
+    public long resyncCount() {
+        return resyncs.sum();
+    }
+
+    /**
+     * @return number of subscribers disconnected for falling behind
+     */
+    public long droppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stops the dispatcher and closes every subscriber
+     */
+    @Override
+    public void close() {
+        closed = true;
+        changes.removeListener(wake);
+        LockSupport.unpark(dispatcher);
+        for (Subscriber subscriber : subscribers.values()) {
+            subscriber.session.close(StatusCode.SHUTDOWN, "server stopping");
+        }
+        subscribers.clear();
+    }
+
+    private class Subscriber implements WriteCallback {
+        final String id;
+        final Session session;
+        final AtomicInteger pending = new AtomicInteger();
+        /**
+         * Pings are not counted as pending frames, but a ping that cannot be written means the connection is dead
+         */
+        final WriteCallback pingCallback = new WriteCallback() {
+            @Override
+            public void writeFailed(Throwable x) {
+                subscribers.remove(id);
+            }
+        };
+        /**
+         * Sequence of the last change sent; only the dispatcher touches it
+         */
+        long cursor;
+
+        Subscriber(String id, Session session, long cursor) {
+            this.id = id;
+            this.session = session;
+            this.cursor = cursor;
+        }
+
+        @Override
+        public void writeSuccess() {
+            // a subscriber that was skipped for being full can take more now
+            if (pending.getAndDecrement() == maxPendingSends) {
+                signal();
+            }
+        }
+
+        @Override
+        public void writeFailed(Throwable x) {
+            pending.decrementAndGet();
+            subscribers.remove(id);
+        }
+    }
+}
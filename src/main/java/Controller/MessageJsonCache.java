@@ -0,0 +1,147 @@
+package Controller;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import Model.Message;
+import Util.IntObjectCache;
+
+/**
+ * A cache of each message's UTF-8 JSON encoding, keyed by message id. Responses are written by copying the cached
+ * bytes of each message straight into the output stream, so a hot message is serialized once rather than on every
+ * read.
+ *
+ * Each cached encoding remembers the message it was made from and is only reused for an equal message, so a stale
+ * encoding is never written even if an invalidation is missed. Handlers that change a message should still
+ * invalidate it to free the entry.
+ *
+ * The cache holds at most maxSize encodings. Message text is at most 255 characters, so memory use is bounded by
+ * roughly maxSize times 1.6 KB in the worst case and is usually a tenth of that.
+ */
+public class MessageJsonCache {
+    private final IntObjectCache<Encoded> encodedById;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize most encodings kept, or 0 to encode every message on every write
+     */
+    public MessageJsonCache(int maxSize) {
+        this.encodedById = maxSize > 0 ? new IntObjectCache<>(maxSize) : null;
+    }
+
+    /**
+     * @param message the message to encode
+     * @return the message as UTF-8 JSON, from the cache when possible
+     * @throws IOException if the message cannot be encoded
+     */
+    public byte[] encode(Message message) throws IOException {
+        if (encodedById == null) {
+            return JsonCodec.encode(message);
+        }
+        int id = message.getMessage_id();
+        Encoded cached = encodedById.get(id);
+        if (cached != null && cached.source.equals(message)) {
+            hits.increment();
+            return cached.json;
+        }
+        misses.increment();
+        long stamp = encodedById.stamp(id);
+        byte[] json = JsonCodec.encode(message);
+        encodedById.putIfUnchanged(id, new Encoded(message, json), stamp);
+        return json;
+    }
+
+    /**
+     * Writes one message as a JSON object.
+     * @param out the stream to write to
+     * @param message the message
+     * @throws IOException if the message cannot be written
+     */
+    public void write(OutputStream out, Message message) throws IOException {
+        out.write(encode(message));
+    }
+
+    /**
+     * Writes messages as a JSON array.
+     * @param out the stream to write to
+     * @param messages the messages, in the order they should appear
+     * @throws IOException if the messages cannot be written
+     */
+    public void writeAll(OutputStream out, List<Message> messages) throws IOException {
+        out.write('[');
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write(encode(messages.get(i)));
+        }
+        out.write(']');
+    }
+
+    /**
+     * Drops the cached encoding of a message that was updated or deleted.
+     * @param messageId the message id
+     */
+    public void invalidate(int messageId) {
+        if (encodedById != null) {
+            encodedById.invalidate(messageId);
+        }
+    }
+
+    /**
+     * @return number of messages written from a cached encoding
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of messages that had to be serialized
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return fraction of messages written from a cached encoding
+     */
+    public double hitRate() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 1.0 : (double) hit / total;
+    }
+
+    /**
+     * @return number of encodings currently cached
+     */
+    public int size() {
+        return encodedById != null ? encodedById.size() : 0;
+    }
+
+    /**
+     * @return number of encodings the cache can hold
+     */
+    public int capacity() {
+        return encodedById != null ? encodedById.capacity() : 0;
+    }
+
+    /**
+     * @return number of encodings evicted to make room for others
+     */
+    public long evictionCount() {
+        return encodedById != null ? encodedById.evictionCount() : 0;
+    }
+
+    private static class Encoded {
+        final Message source;
+        final byte[] json;
+
+        Encoded(Message source, byte[] json) {
+            this.source = source;
+            this.json = json;
+        }
+    }
+}
@@ -2,18 +2,46 @@ package Controller;
 
 import static org.mockito.ArgumentMatchers.contains;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.JsonCodec.Format;
 
 import Model.Account;
+import Model.AccountLookupResult;
 import Model.Message;
+import Model.MessageBatchResult;
+import Model.MessageChange;
+import Model.MessageChanges;
+import Model.MessageLookupResult;
+import Model.MessagePage;
 import Service.AccountService;
 import Service.MessageService;
+import Util.AdaptiveLimiter;
+import Util.Bulkhead;
+import Util.ConnectionUnavailableException;
+import Util.Metrics;
+import Util.TokenBucketLimiter;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Handler;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 
 /**
  * TODO: You will need to write your own endpoints and handlers for your controller. The endpoints you will need can be
@@ -21,35 +49,274 @@ import io.javalin.http.Context;
  * refer to prior mini-project labs and lecture materials for guidance on how a controller may be built.
  */
 public class SocialMediaController {
+    /**
+     * Page size for message listings when the client does not send a limit
+     */
+    private static final int DEFAULT_PAGE_SIZE = Integer.getInteger("api.messages.defaultPageSize", 100);
+    /**
+     * Largest page size a client may request for message listings
+     */
+    private static final int MAX_PAGE_SIZE = Integer.getInteger("api.messages.maxPageSize", 1000);
+    /**
+     * Most ids a client may look up in one GET /messages?ids= or GET /accounts?ids= request
+     */
+    private static final int MAX_LOOKUP_IDS = Integer.getInteger("api.lookup.maxIds", 500);
+    /**
+     * Most messages a client may post in one POST /messages/batch request, set with the system property
+     * api.messages.maxBatchSize
+     */
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("api.messages.maxBatchSize", 100);
+    /**
+     * Longest a GET /messages/changes request may wait for a change, set with the system property
+     * api.changes.maxWaitSeconds
+     */
+    private static final int MAX_CHANGES_WAIT_SECONDS = Integer.getInteger("api.changes.maxWaitSeconds", 30);
+    /**
+     * The JSON codec for every request and response body, also installed as Javalin's JSON mapper
+     */
+    private static final JsonCodec JSON_CODEC = new JsonCodec();
+    /**
+     * Whether requests run on virtual threads, set with the system property server.virtualThreads and only honoured
+     * on a JVM that supports them
+     */
+    private static final boolean VIRTUAL_THREADS = Boolean.getBoolean("server.virtualThreads")
+            && VirtualThreads.areSupported();
+    /**
+     * Bulkheads for handlers that block on the database, so that one kind of work cannot starve another: point reads
+     * (login, single messages, account timelines), table scans (GET /messages) and writes. Each is sized with the
+     * system properties db.bulkhead.{reads,scans,writes}.threads and .queueSize. With virtual threads each handler
+     * runs on a virtual thread of its own and threads only caps how many run at once.
+     * With group commit enabled a create holds no connection while it waits for the shared commit, so writes default
+     * to one full batch of writers instead of four, which would cap every batch at four messages.
+     */
+    private static final Bulkhead READS = bulkhead("reads", 4, 200);
+    private static final Bulkhead SCANS = bulkhead("scans", 2, 50);
+    private static final Bulkhead WRITES = bulkhead("writes", Boolean.getBoolean("db.groupCommit.enabled")
+            ? Integer.getInteger("db.groupCommit.maxBatchSize", 64) : 4, 200);
+    /**
+     * Adaptive concurrency limits in front of each bulkhead. A request over the limit is shed with 503 and
+     * Retry-After rather than queued. Each is bounded with the system properties
+     * api.limit.{reads,scans,writes}.initialLimit, .minLimit and .maxLimit.
+     */
+    private static final AdaptiveLimiter READ_LIMIT = limiter("reads", 20, 4, 200);
+    private static final AdaptiveLimiter SCAN_LIMIT = limiter("scans", 4, 1, 50);
+    private static final AdaptiveLimiter WRITE_LIMIT = limiter("writes", 20, 4, 200);
+    /**
+     * Seconds a shed client is asked to wait before retrying
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+    /**
+     * Most pre-encoded messages kept for message responses, set with the system property messages.jsonCache.maxSize;
+     * messages.jsonCache.enabled=false turns the cache off
+     */
+    private static final int JSON_CACHE_MAX_SIZE = Boolean.parseBoolean(System.getProperty("messages.jsonCache.enabled", "true"))
+            ? Integer.getInteger("messages.jsonCache.maxSize", 10_000) : 0;
+    /**
+     * Messages an account may post or edit per second, and in one burst, set with the system properties
+     * messages.rateLimit.perSecond and messages.rateLimit.burst
+     */
+    private static final double POSTS_PER_SECOND = Double.parseDouble(System.getProperty("messages.rateLimit.perSecond", "5"));
+    private static final int POST_BURST = Integer.getInteger("messages.rateLimit.burst", 20);
+    /**
+     * Accounts whose posting rate is tracked at once, set with the system property messages.rateLimit.slots
+     */
+    private static final int POST_RATE_SLOTS = Integer.getInteger("messages.rateLimit.slots", 65_536);
+    /**
+     * Frames a live feed subscriber may have unsent before it is skipped, set with the system property
+     * live.maxPendingSends, and the keep-alive ping interval, set with live.pingIntervalMillis
+     */
+    private static final int LIVE_MAX_PENDING_SENDS = Integer.getInteger("live.maxPendingSends", 64);
+    private static final long LIVE_PING_INTERVAL_MILLIS = Long.getLong("live.pingIntervalMillis", 15_000);
+
     AccountService accountService;
     MessageService messageService;
+    /**
+     * Conditional GETs answered with 304 Not Modified
+     */
+    private final LongAdder notModifiedResponses = new LongAdder();
+    /**
+     * UTF-8 JSON of recently written messages, used for every message read response
+     */
+    private final MessageJsonCache messageJson = new MessageJsonCache(JSON_CACHE_MAX_SIZE);
+    /**
+     * Per-account rate limit on creating and editing messages
+     */
+    private final TokenBucketLimiter postingLimit = new TokenBucketLimiter(POSTS_PER_SECOND, POST_BURST, POST_RATE_SLOTS)
+            .registerMetrics("messages.rateLimit");
 
 
     public SocialMediaController(){
         this.accountService = new AccountService();
         this.messageService = new MessageService();
+        Metrics.register("http.notModified", notModifiedResponses::sum);
+        Metrics.register("messages.jsonCache.hitRate", messageJson::hitRate);
+        Metrics.register("messages.jsonCache.hits", messageJson::hitCount);
+        Metrics.register("messages.jsonCache.misses", messageJson::missCount);
+        Metrics.register("messages.jsonCache.evictions", messageJson::evictionCount);
+        Metrics.register("messages.jsonCache.size", messageJson::size);
+        Metrics.register("messages.jsonCache.capacity", messageJson::capacity);
     }
 
     /**
      * Method defines the structure of the Javalin Social Media API. Javalin methods will use handler methods
      * to manipulate the Context object, which is a special object provided by Javalin which contains information about
      * HTTP requests and can generate responses.
+     * Requests arrive on Jetty's thread pool of up to server.maxThreads platform threads. Handlers that block on the
+     * database are then handed to a bulkhead (see async) and run on its threads. When the system property
+     * server.virtualThreads is true and the JVM supports virtual threads, both Jetty and the bulkheads use a virtual
+     * thread per request instead, the bulkheads still bounding how many handlers run at once.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("register", this::registerHandler);
-        app.post("login", this::loginHandler);
-        app.post("messages", this::createMessageHandler);
-        app.get("messages", this::getAllMessagesHandler);
-        app.get("messages/{message_id}", this::getMessageByIdHandler);
-        app.delete("messages/{message_id}", this::deleteMessageHandler);
-        app.patch("messages/{message_id}", this::updateMessageHandler);
-        app.get("accounts/{account_id}/messages", this::getAllMessagesByUserHandler);
+        Javalin app = Javalin.create(config -> {
+            config.jsonMapper(JSON_CODEC);
+            config.jetty.server(SocialMediaController::createServer);
+        });
+        app.post("register", async(WRITE_LIMIT, WRITES, this::registerHandler));
+        app.post("login", async(READ_LIMIT, READS, this::loginHandler));
+        app.post("messages", async(WRITE_LIMIT, WRITES, this::createMessageHandler));
+        app.post("messages/batch", async(WRITE_LIMIT, WRITES, this::createMessageBatchHandler));
+        // a lookup of messages by id is a point read, so it runs with the reads rather than with the table scans
+        Handler scanMessages = async(SCAN_LIMIT, SCANS, this::getAllMessagesHandler);
+        Handler lookupMessages = async(READ_LIMIT, READS, this::getMessagesByIdsHandler);
+        app.get("messages", context -> (context.queryParam("ids") != null ? lookupMessages : scanMessages).handle(context));
+        // the change log is in memory, so reading it needs no database bulkhead
+        app.get("messages/changes", this::getChangesHandler);
+        app.get("messages/{message_id}", async(READ_LIMIT, READS, this::getMessageByIdHandler));
+        app.delete("messages/{message_id}", async(WRITE_LIMIT, WRITES, this::deleteMessageHandler));
+        app.patch("messages/{message_id}", async(WRITE_LIMIT, WRITES, this::updateMessageHandler));
+        app.get("accounts", async(READ_LIMIT, READS, this::getAccountsByIdsHandler));
+        app.get("accounts/{account_id}/messages", async(READ_LIMIT, READS, this::getAllMessagesByUserHandler));
+        app.get("metrics", this::metricsHandler);
+        // a body that is not valid JSON, or holds a field of the wrong type, is the client's mistake
+        app.exception(JsonProcessingException.class, (e, context) -> context.status(400));
+        // the connection pool stayed exhausted for the whole borrow timeout: shed the request like a full bulkhead
+        app.exception(ConnectionUnavailableException.class, (e, context) -> shed(context));
+        LiveFeed liveFeed = createLiveFeed();
+        app.ws("messages/live", liveFeed::configure);
+        app.events(event -> event.serverStopped(liveFeed::close));
 
         return app;
     }
 
+    /**
+     * Wraps a handler so that it runs on a bulkhead instead of the Jetty thread that received the request. The
+     * request is suspended with Javalin's async support until the handler has written its response.
+     * The request must first get a permit from the limiter, and the time until the handler finishes, queueing
+     * included, is fed back into the limit. If the limiter or the bulkhead is full the request is answered with 503
+     * straight away.
+     * @param limiter the concurrency limit the request counts against
+     * @param bulkhead the bulkhead to run the handler on
+     * @param handler the handler
+     * @return a handler that hands the request to the bulkhead
+     */
+    private static Handler async(AdaptiveLimiter limiter, Bulkhead bulkhead, Handler handler) {
+        return context -> {
+            if (!limiter.tryAcquire()) {
+                shed(context);
+                return;
+            }
+            long start = System.nanoTime();
+            // Javalin calls the supplier once the request has been suspended, so the handler never races the request
+            // thread for the response
+            context.future(() -> {
+                try {
+                    return bulkhead.submit(() -> {
+                        handler.handle(context);
+                        return null;
+                    }).whenComplete((result, error) -> limiter.release(System.nanoTime() - start));
+                } catch (RejectedExecutionException e) {
+                    limiter.releaseWithoutSample();
+                    shed(context);
+                    return CompletableFuture.completedFuture(null);
+                }
+            });
+        };
+    }
+
+    private static void shed(Context context) {
+        context.header("Retry-After", RETRY_AFTER_SECONDS);
+        context.status(503);
+    }
+
+    /**
+     * @param context the request context
+     * @return the format of the request body, from its Content-Type; JSON unless a binary format is named
+     */
+    private static Format requestFormat(Context context) {
+        return Format.forContentType(context.contentType());
+    }
+
+    /**
+     * @param context the request context
+     * @return the format to answer in, from the request's Accept header; JSON unless a binary format is accepted
+     */
+    private static Format responseFormat(Context context) {
+        return Format.forAccept(context.header("Accept"));
+    }
+
+    /**
+     * Writes a response body in the format the client accepts
+     * @param context the request context
+     * @param value an Account, a Message or any other value Jackson can serialize
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private static void respond(Context context, Object value) throws IOException {
+        Format format = responseFormat(context);
+        context.header("Vary", "Accept");
+        if (format == Format.JSON) {
+            context.json(value);
+            return;
+        }
+        context.contentType(format.mediaType());
+        OutputStream out = new BufferedOutputStream(context.outputStream());
+        JsonCodec.write(out, value, format);
+        out.flush();
+    }
+
+    private static void tooManyRequests(Context context) {
+        context.header("Retry-After", RETRY_AFTER_SECONDS);
+        context.status(429);
+    }
+
+    private static AdaptiveLimiter limiter(String name, int initialLimit, int minLimit, int maxLimit) {
+        String prefix = "api.limit." + name;
+        return new AdaptiveLimiter(Integer.getInteger(prefix + ".initialLimit", initialLimit),
+                Integer.getInteger(prefix + ".minLimit", minLimit),
+                Integer.getInteger(prefix + ".maxLimit", maxLimit))
+                .registerMetrics(prefix);
+    }
+
+    private static Bulkhead bulkhead(String name, int threads, int queueSize) {
+        return new Bulkhead("db.bulkhead." + name,
+                Integer.getInteger("db.bulkhead." + name + ".threads", threads),
+                Integer.getInteger("db.bulkhead." + name + ".queueSize", queueSize),
+                VIRTUAL_THREADS ? VirtualThreads::executeOnVirtualThread : null);
+    }
+
+    /**
+     * Creates the Jetty server with an explicit thread pool, so the choice between platform and virtual threads does
+     * not depend on which JDK the server happens to run on. With virtual threads Jetty keeps its selector threads
+     * on the pool and runs each request's handler on a new virtual thread, so requests blocked on JDBC no longer
+     * hold, or queue for, one of a fixed number of workers.
+     * @return the server Javalin should start
+     */
+    private static Server createServer() {
+        QueuedThreadPool threadPool = new QueuedThreadPool(Integer.getInteger("server.maxThreads", 250), 8, 60_000);
+        threadPool.setName("JettyServerThreadPool");
+        if (VIRTUAL_THREADS) {
+            threadPool.setUseVirtualThreads(true);
+        } else if (Boolean.getBoolean("server.virtualThreads")) {
+            System.out.println("server.virtualThreads is set but this JVM does not support virtual threads; "
+                    + "using platform threads");
+        }
+        Metrics.register("server.virtualThreads", () -> threadPool.isUseVirtualThreads() ? 1 : 0);
+        Metrics.register("server.threads", threadPool::getThreads);
+        Metrics.register("server.busyThreads", threadPool::getBusyThreads);
+        Metrics.register("server.queuedRequests", threadPool::getQueueSize);
+        return new Server(threadPool);
+    }
+
     /**
      * Handler to register a new account.
      * The Jackson ObjectMapper will automatically convert the JSON of the POST request into an Account object.
@@ -57,11 +324,10 @@ public class SocialMediaController {
      * If AccountService returns a null author (meaning posting an Account was unsuccessful), the API will return a 400
      * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void registerHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(context.body(), Account.class);
+    private void registerHandler(Context context) throws IOException {
+        Account account = JsonCodec.readAccount(context.bodyInputStream(), requestFormat(context));
         
         boolean usernameValid = account.getUsername().length() != 0;
         boolean passwordValid = account.getPassword().length() >= 4;
@@ -70,7 +336,7 @@ public class SocialMediaController {
         if (usernameValid && passwordValid && !usernameExists) {
             Account addedAccount = accountService.createAccount(account);
             if (addedAccount != null) {
-                context.json(mapper.writeValueAsString(addedAccount));
+                respond(context, addedAccount);
                 context.status(200);
             } else {
                 context.status(400);
@@ -86,15 +352,14 @@ public class SocialMediaController {
      * if it exists.
      * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void loginHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(context.body(), Account.class);
+    private void loginHandler(Context context) throws IOException {
+        Account account = JsonCodec.readAccount(context.bodyInputStream(), requestFormat(context));
         Account matchedAccount = accountService.getAccountByCredentials(account);
         
         if (matchedAccount != null) {
-            context.json(matchedAccount);
+            respond(context, matchedAccount);
         } else {
             context.status(401);
         }
@@ -104,21 +369,25 @@ public class SocialMediaController {
      * Handler to post a message
      * The Message text must be between 1 and 255 characters long and the account specified by posted_by must exist.
      * If MessageService returns a null message (meaning posting an Message was unsuccessful), the API will return a 400
+     * If the account has posted and edited more messages than its rate limit allows, the API will return a 429
      * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void createMessageHandler(Context context) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(context.body(), Message.class);
-        
-        boolean messageTextValid = message.getMessage_text().length() > 0 && message.getMessage_text().length() <= 255;
-        boolean userExists = accountService.getAccountById(message.getPosted_by()) != null;
+    private void createMessageHandler(Context context) throws IOException {
+        Message message = JsonCodec.readMessage(context.bodyInputStream(), requestFormat(context));
+        boolean messageTextValid = isMessageTextValid(message.getMessage_text());
+        boolean userExists = messageTextValid && accountService.getAccountById(message.getPosted_by()) != null;
         
         if (messageTextValid && userExists) {
+            // only a post that would be accepted costs a token, so rejected posts cannot drain an account's budget
+            if (!postingLimit.tryAcquire(message.getPosted_by())) {
+                tooManyRequests(context);
+                return;
+            }
             Message addedMessage = messageService.createMessage(message);
             if (addedMessage != null) {
-                context.json(mapper.writeValueAsString(addedMessage));
+                respond(context, addedMessage);
                 context.status(200);
             } else {
                 context.status(400);
@@ -129,24 +398,323 @@ public class SocialMediaController {
     }
 
     /**
-     * Handler to retrieve all messages
+     * Handler to post many messages at once
+     * The request body is a JSON array of messages. Each message is validated the same way as in createMessageHandler,
+     * with every posted_by checked using a single account lookup. The valid messages are inserted in one transaction.
+     * Every message that passes validation costs its account one token of the posting rate limit; once an account is
+     * out of tokens its remaining messages are rejected, and if no message was created because of that the API will
+     * return a 429.
+     * The response lists the created messages with their ids and the index and reason of every rejected message.
+     * If the body is not an array, holds more than api.messages.maxBatchSize messages, or the insert fails, the API
+     * will return a 400
+     * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.post method.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
+     */
+    private void createMessageBatchHandler(Context context) throws IOException {
+        Message[] messages = JsonCodec.readMessages(context.bodyInputStream(), requestFormat(context));
+        if (messages == null || messages.length > MAX_BATCH_SIZE) {
+            context.status(400);
+            return;
+        }
+
+        MessageBatchResult result = new MessageBatchResult();
+        Set<Integer> postedBy = new HashSet<>();
+        for (Message message : messages) {
+            if (message != null && isMessageTextValid(message.getMessage_text())) {
+                postedBy.add(message.getPosted_by());
+            }
+        }
+        Set<Integer> existingAccounts = accountService.getExistingAccountIds(postedBy);
+
+        List<Message> accepted = new ArrayList<>(messages.length);
+        boolean rateLimited = false;
+        for (int i = 0; i < messages.length; i++) {
+            Message message = messages[i];
+            if (message == null || !isMessageTextValid(message.getMessage_text())) {
+                result.rejected.add(new MessageBatchResult.Rejection(i, "message_text must be 1 to 255 characters"));
+            } else if (!existingAccounts.contains(message.getPosted_by())) {
+                result.rejected.add(new MessageBatchResult.Rejection(i, "posted_by does not refer to an existing account"));
+            } else if (!postingLimit.tryAcquire(message.getPosted_by())) {
+                // charged per message, as if each had been posted on its own
+                result.rejected.add(new MessageBatchResult.Rejection(i, "posted_by has exceeded its posting rate limit"));
+                rateLimited = true;
+            } else {
+                accepted.add(message);
+            }
+        }
+
+        List<Message> created = messageService.createMessages(accepted);
+        if (created != null) {
+            result.created = created;
+            respond(context, result);
+            if (rateLimited) {
+                context.header("Retry-After", RETRY_AFTER_SECONDS);
+                if (created.isEmpty()) {
+                    context.status(429);
+                }
+            }
+        } else {
+            context.status(400);
+        }
+    }
+
+    /**
+     * Handler to retrieve all messages, one page at a time
+     * Messages are returned in message_id order. The optional "after" query parameter is the cursor from the previous
+     * page and "limit" caps the page size; without them the first page of the default size is returned. When more
+     * messages follow, the cursor for the next page is sent in the X-Next-Cursor header and a Link header.
+     * Pages carry an ETag; a request whose If-None-Match matches it gets a 304 without any messages being read.
+     * With "stream=true" the whole table is streamed instead, see streamAllMessages.
      * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
+     * @throws IOException will be thrown if the streamed response cannot be written.
+     */
+    private void getAllMessagesHandler(Context context) throws IOException {
+        if ("true".equals(context.queryParam("stream"))) {
+            streamAllMessages(context);
+            return;
+        }
+        Integer after = parseCursor(context);
+        Integer limit = parseLimit(context);
+        if (after == null || limit == null) {
+            context.status(400);
+            return;
+        }
+        if (isNotModified(context, messageService.getMessagesEtag())) {
+            return;
+        }
+        MessagePage page = messageService.getMessagesPage(after, limit);
+        writePage(context, page, limit, "/messages");
+    }
+
+    /**
+     * Streams every message as one JSON array. Each row is written to the response output stream as it is read
+     * from the database, so memory use does not grow with the size of the table and the first bytes go out before
+     * the query has finished.
+     * @param context the request context
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void getAllMessagesHandler(Context context) {
-        List<Message> messages = messageService.getAllMessages();
-        context.json(messages);
+    private void streamAllMessages(Context context) throws IOException {
+        Format format = responseFormat(context);
+        context.header("Vary", "Accept");
+        context.contentType(format.mediaType());
+        JsonGenerator generator = JsonCodec.createGenerator(context.outputStream(), format);
+        generator.writeStartArray();
+        generator.flush();
+        boolean complete = messageService.streamAllMessages((messageId, postedBy, messageText, timePostedEpoch) ->
+                JsonCodec.writeMessage(generator, messageId, postedBy, messageText, timePostedEpoch));
+        if (complete) {
+            generator.writeEndArray();
+        }
+        // on failure the array is left unterminated so the client cannot mistake a partial listing for a full one
+        generator.close();
+    }
+
+    /**
+     * Handler to retrieve several messages by id in one request
+     * The "ids" query parameter is a comma separated list of message ids, and may be repeated. The messages are
+     * served from the message cache, with all the misses read in one query. The response lists the messages found,
+     * in the order requested, and the ids that have no message. Repeated ids are returned once.
+     * If an id is not an integer, or there are no ids or too many, the API will return a 400
+     * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.get method.
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private void getMessagesByIdsHandler(Context context) throws IOException {
+        int[] ids = parseIds(context);
+        if (ids == null) {
+            context.status(400);
+            return;
+        }
+        MessageLookupResult result = new MessageLookupResult();
+        result.messages = messageService.getMessagesByIds(ids);
+        result.missing = missingIds(ids, result.messages.stream().mapToInt(Message::getMessage_id).toArray());
+        respond(context, result);
+    }
+
+    /**
+     * Handler to retrieve several accounts by id in one request
+     * The "ids" query parameter works as for GET /messages?ids=. Accounts are served from the account cache, with
+     * all the misses read in one query. Only the account_id and username of each account are returned.
+     * If an id is not an integer, or there are no ids or too many, the API will return a 400
+     * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.get method.
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private void getAccountsByIdsHandler(Context context) throws IOException {
+        int[] ids = parseIds(context);
+        if (ids == null) {
+            context.status(400);
+            return;
+        }
+        AccountLookupResult result = new AccountLookupResult();
+        List<Account> accounts = accountService.getAccountsByIds(ids);
+        for (Account account : accounts) {
+            result.accounts.add(new AccountLookupResult.Profile(account));
+        }
+        result.missing = missingIds(ids, accounts.stream().mapToInt(Account::getAccount_id).toArray());
+        respond(context, result);
+    }
+
+    /**
+     * Reads the "ids" query parameters, each a comma separated list of ids
+     * @param context the request context
+     * @return the distinct ids in the order first given, or null if there are none, too many, or one is not an
+     *         integer
+     */
+    private int[] parseIds(Context context) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        try {
+            for (String list : context.queryParams("ids")) {
+                for (String id : list.split(",")) {
+                    if (!id.isBlank()) {
+                        ids.add(Integer.parseInt(id.trim()));
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (ids.isEmpty() || ids.size() > MAX_LOOKUP_IDS) {
+            return null;
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param requested the ids that were asked for
+     * @param found the ids that were found
+     * @return the requested ids that were not found, in the order requested
+     */
+    private static List<Integer> missingIds(int[] requested, int[] found) {
+        Set<Integer> foundIds = new HashSet<>();
+        for (int id : found) {
+            foundIds.add(id);
+        }
+        List<Integer> missing = new ArrayList<>();
+        for (int id : requested) {
+            if (!foundIds.contains(id)) {
+                missing.add(id);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Handler for incremental sync: the messages created, updated or deleted after a cursor
+     * Without "since", no changes are returned, only the cursor of the latest change. A client takes that cursor
+     * before it loads the full message list, so that no change can fall between the two.
+     * With "since", the changes after that cursor are returned oldest first, at most "limit" of them, with the cursor
+     * to send next and whether more changes follow. With "wait" set to a number of seconds, a request that finds no
+     * changes waits for the next one, or until the wait runs out, before answering; no thread is held while it waits.
+     * If the cursor is from an earlier run of the server or is older than the changes still kept, the API will return a
+     * 410 with the latest cursor, and the client should reload the full list. If limit or wait is not a positive
+     * integer, the API will return a 400
+     * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.get method.
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private void getChangesHandler(Context context) throws IOException {
+        Integer limit = parseLimit(context);
+        Integer wait = parseWait(context);
+        if (limit == null || wait == null) {
+            context.status(400);
+            return;
+        }
+        String since = context.queryParam("since");
+        if (since == null) {
+            MessageChanges result = new MessageChanges();
+            result.cursor = messageService.getLatestChangeCursor();
+            respond(context, result);
+            return;
+        }
+        long seq = messageService.parseChangeCursor(since);
+        if (seq < 0) {
+            changesGone(context);
+            return;
+        }
+        if (wait > 0 && messageService.getChanges().head() <= seq) {
+            // the response is written on a read thread, not on the thread that published the change
+            context.future(() -> messageService.getChanges().awaitAfter(seq, wait, TimeUnit.SECONDS)
+                    .thenCompose(head -> READS.submit(() -> {
+                        writeChanges(context, seq, limit);
+                        return null;
+                    }))
+                    .exceptionally(error -> {
+                        if (error.getCause() instanceof RejectedExecutionException) {
+                            shed(context);
+                            return null;
+                        }
+                        throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+                    }));
+            return;
+        }
+        writeChanges(context, seq, limit);
+    }
+
+    private void writeChanges(Context context, long since, int limit) throws IOException {
+        List<MessageChange> changes = messageService.getChangesSince(since, limit);
+        if (changes == null) {
+            changesGone(context);
+            return;
+        }
+        MessageChanges result = new MessageChanges();
+        result.changes = changes;
+        long last = changes.isEmpty() ? since : changes.get(changes.size() - 1).getSeq();
+        result.cursor = messageService.getChangeCursor(last);
+        result.more = last < messageService.getChanges().head();
+        respond(context, result);
+    }
+
+    private void changesGone(Context context) throws IOException {
+        MessageChanges result = new MessageChanges();
+        result.cursor = messageService.getLatestChangeCursor();
+        context.status(410);
+        respond(context, result);
+    }
+
+    /**
+     * Reads the "wait" long-poll time, capped at the longest wait allowed
+     * @param context the request context
+     * @return the wait in seconds, 0 when absent, or null if it is not a non-negative integer
+     */
+    private Integer parseWait(Context context) {
+        String wait = context.queryParam("wait");
+        if (wait == null) {
+            return 0;
+        }
+        try {
+            int seconds = Integer.parseInt(wait);
+            return seconds >= 0 ? Math.min(seconds, MAX_CHANGES_WAIT_SECONDS) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     /**
      * Handler to retrieve a message by a specified id
+     * Responses carry an ETag; a request whose If-None-Match matches it gets a 304 without the message being read.
      * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void getMessageByIdHandler(Context context) {
-        Message message = messageService.getMessageById(Integer.valueOf(context.pathParam("message_id")));
+    private void getMessageByIdHandler(Context context) throws IOException {
+        int messageId = Integer.valueOf(context.pathParam("message_id"));
+        if (isNotModified(context, messageService.getMessageEtag(messageId))) {
+            return;
+        }
+        Message message = messageService.getMessageById(messageId);
         if (message != null) {
-            context.json(message);
+            Format format = responseFormat(context);
+            context.contentType(format.mediaType());
+            OutputStream out = new BufferedOutputStream(context.outputStream());
+            if (format == Format.JSON) {
+                messageJson.write(out, message);
+            } else {
+                JsonCodec.write(out, message, format);
+            }
+            out.flush();
         } else {
             context.status(200);
         }
@@ -156,12 +724,14 @@ public class SocialMediaController {
      * Handler to delete a message by id
      * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void deleteMessageHandler(Context context) {
+    private void deleteMessageHandler(Context context) throws IOException {
         int messageId = Integer.valueOf(context.pathParam("message_id"));
         Message message = messageService.deleteMessage(messageId);
+        messageJson.invalidate(messageId);
         if (message != null) {
-            context.json(message);
+            respond(context, message);
         } else {
             context.status(200);
         }
@@ -171,23 +741,30 @@ public class SocialMediaController {
      * Handler to update message
      * New message text must be 1 to 255 characters in length and the message being updated must
      * be in the database already
+     * Edits count against the rate limit of the message's author, and the API will return a 429 when it is exceeded
      * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
-     * @throws JsonProcessingException will be thrown if there is an issue converting JSON into an object.
+     * @throws IOException will be thrown if there is an issue converting JSON into an object.
      */
-    private void updateMessageHandler(Context context) throws JsonProcessingException {
+    private void updateMessageHandler(Context context) throws IOException {
         int messageId = Integer.valueOf(context.pathParam("message_id"));
 
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode rootNode = mapper.readTree(context.body());
-        String messageText = rootNode.get("message_text").asText();
+        Message patch = JsonCodec.readMessage(context.bodyInputStream(), requestFormat(context));
+        String messageText = patch != null ? patch.getMessage_text() : null;
 
-        boolean messageTextValid = messageText.length() > 0 && messageText.length() <= 255;
-        boolean messageExists = messageService.doesMessageExist(messageId);
+        boolean messageTextValid = isMessageTextValid(messageText);
+        // the rate limit is charged to the message's author, so the author is looked up first, usually from the cache
+        Message existing = messageTextValid ? messageService.getMessageById(messageId) : null;
+        if (existing != null && !postingLimit.tryAcquire(existing.getPosted_by())) {
+            tooManyRequests(context);
+            return;
+        }
 
-        if(messageTextValid && messageExists) {
-            Message updatedMessage = messageService.updateMessage(messageId, messageText);
-            context.json(updatedMessage);
+        // updateMessage returns null when the message does not exist, so no separate existence check is needed
+        Message updatedMessage = existing != null ? messageService.updateMessage(messageId, messageText) : null;
+        messageJson.invalidate(messageId);
+        if (updatedMessage != null) {
+            respond(context, updatedMessage);
         } else {
             context.status(400);
         }
@@ -195,13 +772,157 @@ public class SocialMediaController {
 
     /**
      * Handler to get all users for an account
+     * Messages are returned oldest first, one page at a time. The optional "after" query parameter is the opaque
+     * cursor from the previous page's X-Next-Cursor header and "limit" caps the page size, as for all messages.
      * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
      *            be available to this method automatically thanks to the app.post method.
+     * @throws IOException will be thrown if the response cannot be written.
      */
-    private void getAllMessagesByUserHandler(Context context) {
+    private void getAllMessagesByUserHandler(Context context) throws IOException {
         int accountId = Integer.valueOf(context.pathParam("account_id"));
-        List<Message> messages = messageService.getAllMessagesByUser(accountId);
-        context.json(messages);
+        Integer limit = parseLimit(context);
+        if (limit == null) {
+            context.status(400);
+            return;
+        }
+        if (isNotModified(context, messageService.getAccountMessagesEtag(accountId))) {
+            return;
+        }
+        MessagePage page = messageService.getMessagesPageByUser(accountId, context.queryParam("after"), limit);
+        if (page == null) {
+            context.status(400);
+            return;
+        }
+        writePage(context, page, limit, "/accounts/" + accountId + "/messages");
+    }
+
+    /**
+     * Sets the response's ETag and, if the request's If-None-Match already names it, answers 304 Not Modified.
+     * The ETag must be taken before the response content is read, so that content newer than its ETag is only ever
+     * revalidated again rather than content older than its ETag being kept.
+     * Each body format is a separate representation with its own ETag, so the format is appended to the tag for
+     * anything but JSON.
+     * @param context the request context
+     * @param etag the current strong ETag of the requested resource
+     * @return True if a 304 was sent and the handler should not write a body, false otherwise
+     */
+    private boolean isNotModified(Context context, String etag) {
+        Format format = responseFormat(context);
+        if (format != Format.JSON) {
+            etag = etag.substring(0, etag.length() - 1) + "-" + format.name().toLowerCase() + "\"";
+        }
+        context.header("Vary", "Accept");
+        context.header("ETag", etag);
+        String ifNoneMatch = context.header("If-None-Match");
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // If-None-Match uses the weak comparison, so a W/ prefix does not prevent a match
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                notModifiedResponses.increment();
+                context.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the "after" pagination cursor
+     * @param context the request context
+     * @return the cursor, 0 when absent, or null if it is not a non-negative integer
+     */
+    private Integer parseCursor(Context context) {
+        String after = context.queryParam("after");
+        if (after == null) {
+            return 0;
+        }
+        try {
+            int cursor = Integer.parseInt(after);
+            return cursor >= 0 ? cursor : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the "limit" page size, capped at the maximum page size
+     * @param context the request context
+     * @return the page size, the default page size when absent, or null if it is not a positive integer
+     */
+    private Integer parseLimit(Context context) {
+        String limit = context.queryParam("limit");
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        try {
+            int size = Integer.parseInt(limit);
+            return size > 0 ? Math.min(size, MAX_PAGE_SIZE) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes a page of messages as an array, advertising the next page's cursor in headers when there is one. JSON
+     * pages are written from the pre-encoded message cache
+     * @param context the request context
+     * @param page the page to write
+     * @param limit the page size used, repeated in the next page link
+     * @param path the endpoint path, used to build the next page link
+     * @throws IOException will be thrown if the response cannot be written.
+     */
+    private void writePage(Context context, MessagePage page, int limit, String path) throws IOException {
+        if (page.next != null) {
+            context.header("X-Next-Cursor", page.next);
+            context.header("Link", "<" + path + "?after=" + page.next + "&limit=" + limit + ">; rel=\"next\"");
+        }
+        Format format = responseFormat(context);
+        context.contentType(format.mediaType());
+        OutputStream out = new BufferedOutputStream(context.outputStream());
+        if (format == Format.JSON) {
+            messageJson.writeAll(out, page.messages);
+        } else {
+            JsonCodec.write(out, page.messages, format);
+        }
+        out.flush();
+    }
+
+    /**
+     * Message text is valid when it is present and between 1 and 255 characters long
+     * @param messageText the text to check
+     * @return True if the text can be stored as a message, false otherwise
+     */
+    private boolean isMessageTextValid(String messageText) {
+        return messageText != null && messageText.length() > 0 && messageText.length() <= 255;
+    }
+
+    /**
+     * Creates the feed behind the messages/live WebSocket endpoint, which pushes every message created, updated or
+     * deleted from the moment a client connects. See LiveFeed.
+     * @return the feed, following this controller's message changes
+     */
+    private LiveFeed createLiveFeed() {
+        LiveFeed feed = new LiveFeed(messageService.getChanges(), LIVE_MAX_PENDING_SENDS, LIVE_PING_INTERVAL_MILLIS);
+        Metrics.register("live.subscribers", feed::subscriberCount);
+        Metrics.register("live.sent", feed::sentCount);
+        Metrics.register("live.resyncs", feed::resyncCount);
+        Metrics.register("live.dropped", feed::droppedCount);
+        return feed;
+    }
+
+    /**
+     * Handler to report runtime metrics such as connection pool usage
+     * @param context The context object handles information HTTP requests and generates responses within Javalin. It will
+     *            be available to this method automatically thanks to the app.get method.
+     */
+    private void metricsHandler(Context context) {
+        context.json(Metrics.snapshot());
     }
 
 
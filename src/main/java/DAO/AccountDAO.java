@@ -1,7 +1,12 @@
 package DAO;
 
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 import Model.Account;
 import Util.ConnectionUtil;
@@ -17,18 +22,18 @@ public class AccountDAO {
         Connection connection = ConnectionUtil.getConnection();
         try {
             //Write SQL logic here
-            String sql = "SELECT * FROM account WHERE username = ?;";
+            String sql = "SELECT " + AccountRowMapper.COLUMNS + " FROM account WHERE username = ?;";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             preparedStatement.setString(1, username);
             ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()){
-                return new Account(rs.getInt("account_id"),
-                                rs.getString("username"),
-                                rs.getString("password"));
+                return AccountRowMapper.map(rs);
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return null;
     }
@@ -59,6 +64,8 @@ public class AccountDAO {
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return null;
     }
@@ -74,19 +81,19 @@ public class AccountDAO {
         Connection connection = ConnectionUtil.getConnection();
         try {
             //Write SQL logic here
-            String sql = "SELECT * FROM account WHERE username = ? AND password = ?;";
+            String sql = "SELECT " + AccountRowMapper.COLUMNS + " FROM account WHERE username = ? AND password = ?;";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             preparedStatement.setString(1, account.getUsername());
             preparedStatement.setString(2, account.getPassword());
             ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()){
-                return new Account(rs.getInt("account_id"),
-                                rs.getString("username"),
-                                rs.getString("password"));
+                return AccountRowMapper.map(rs);
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return null;
     }
@@ -96,24 +103,114 @@ public class AccountDAO {
      * 
      * @param id
      * @return The account if it exists, null otherwise
+     * @throws DataAccessException if the query failed, so the caller does not cache the account as missing
      */
     public Account getAccountById(int id) {
         Connection connection = ConnectionUtil.getConnection();
         try {
             //Write SQL logic here
-            String sql = "SELECT * FROM account WHERE account_id = ?;";
+            String sql = "SELECT " + AccountRowMapper.COLUMNS + " FROM account WHERE account_id = ?;";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             preparedStatement.setInt(1, id);
             ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()){
-                return new Account(rs.getInt("account_id"),
-                                rs.getString("username"),
-                                rs.getString("password"));
+                return AccountRowMapper.map(rs);
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return null;
     }
+
+    /**
+     * Retrieves the accounts with the given ids, using a single query
+     * 
+     * @param ids The account ids to look up
+     * @return The accounts that exist, in account_id order, or null if the query failed
+     */
+    public List<Account> getAccountsByIds(int[] ids) {
+        List<Account> accounts = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return accounts;
+        }
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT " + AccountRowMapper.COLUMNS + " FROM account WHERE account_id = ANY(?) ORDER BY account_id";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            Integer[] boxed = new Integer[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                boxed[i] = ids[i];
+            }
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", boxed));
+            ResultSet rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                accounts.add(AccountRowMapper.map(rs));
+            }
+            return accounts;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
+        }
+        return null;
+    }
+
+    /**
+     * Finds which of the given account ids exist in the account table, using a single query
+     * 
+     * @param ids The account ids to look up
+     * @return The subset of ids that belong to an existing account
+     */
+    public Set<Integer> getExistingAccountIds(Collection<Integer> ids) {
+        Set<Integer> existing = new HashSet<>();
+        if (ids.isEmpty()) {
+            return existing;
+        }
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT account_id FROM account WHERE account_id = ANY(?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", ids.toArray()));
+            ResultSet rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                existing.add(rs.getInt(1));
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
+        }
+        return existing;
+    }
+
+    /**
+     * Hands every username in the account table to the consumer, one row at a time
+     * 
+     * @param consumer Receives each username
+     * @return True if every username was read, false if the query failed
+     */
+    public boolean forEachUsername(Consumer<String> consumer) {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT username FROM account";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            ResultSet rs = preparedStatement.executeQuery();
+            while(rs.next()){
+                consumer.accept(rs.getString(1));
+            }
+            return true;
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
+        }
+        return false;
+    }
 }
@@ -0,0 +1,36 @@
+package DAO;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import Model.Account;
+
+/**
+ * Maps account rows to Account objects by column position. Every account query selects COLUMNS, in this order,
+ * so columns can be read by ordinal instead of paying a name lookup per column per row.
+ */
+public final class AccountRowMapper {
+    /**
+     * Select list every account query must use, in this exact order
+     */
+    public static final String COLUMNS = "account_id, username, password";
+
+    private static final int ACCOUNT_ID = 1;
+    private static final int USERNAME = 2;
+    private static final int PASSWORD = 3;
+
+    private AccountRowMapper() {
+    }
+
+    /**
+     * Maps the current row.
+     * @param rs A result set positioned on a row selected with COLUMNS
+     * @return The account in that row
+     * @throws SQLException if a column cannot be read
+     */
+    public static Account map(ResultSet rs) throws SQLException {
+        return new Account(rs.getInt(ACCOUNT_ID),
+                rs.getString(USERNAME),
+                rs.getString(PASSWORD));
+    }
+}
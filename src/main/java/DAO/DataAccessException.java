@@ -0,0 +1,17 @@
+package DAO;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown by DAO lookups whose callers cache the answer, when the query itself failed. Those lookups return null
+ * only for a row that does not exist, so a failed query is never mistaken for a miss and cached as one.
+ */
+public class DataAccessException extends RuntimeException {
+
+    /**
+     * @param cause the error the query failed with
+     */
+    public DataAccessException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+}
@@ -1,5 +1,6 @@
 package DAO;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -8,14 +9,71 @@ import javax.swing.plaf.nimbus.State;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.Metrics;
 
 public class MessageDAO {
     /**
-     * Inserts a message into the message table
+     * Number of rows sent to the database per executeBatch call when inserting many messages
+     */
+    private static final int BATCH_CHUNK_SIZE = 500;
+
+    /**
+     * Rows fetched per round trip when streaming the whole message table
+     */
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger("db.stream.fetchSize", 500);
+
+    /**
+     * Every message, oldest first. Walks message_time_id_idx rather than sorting the table.
+     */
+    public static final String ALL_MESSAGES_SQL =
+            "SELECT " + MessageRowMapper.COLUMNS + " FROM message ORDER BY time_posted_epoch, message_id";
+
+    /**
+     * One page of messages in message_id order. Seeks the primary key straight to the cursor.
+     */
+    public static final String MESSAGES_AFTER_SQL =
+            "SELECT " + MessageRowMapper.COLUMNS + " FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?";
+
+    /**
+     * One account's messages, oldest first. The hint keeps H2 on message_posted_by_time_idx: left to itself it picks
+     * the foreign key's posted_by index, which holds the account's rows in no useful order.
+     */
+    public static final String MESSAGES_BY_USER_SQL = "SELECT " + MessageRowMapper.COLUMNS
+            + " FROM message USE INDEX (message_posted_by_time_idx) WHERE posted_by = ? ORDER BY time_posted_epoch, message_id";
+
+    /**
+     * Shared group commit queue for createMessage, or null when group commit is disabled. Enable it with the system
+     * property db.groupCommit.enabled and tune it with db.groupCommit.maxBatchSize and db.groupCommit.maxWaitMicros.
+     */
+    private static final MessageGroupCommit groupCommit;
+
+    static {
+        if (Boolean.getBoolean("db.groupCommit.enabled")) {
+            groupCommit = new MessageGroupCommit(new MessageDAO(),
+                    Integer.getInteger("db.groupCommit.maxBatchSize", 64),
+                    Long.getLong("db.groupCommit.maxWaitMicros", 2000));
+            Metrics.register("db.groupCommit.batches", groupCommit::getBatchCount);
+            Metrics.register("db.groupCommit.messages", groupCommit::getMessageCount);
+            Metrics.register("db.groupCommit.maxBatchSize", groupCommit::getMaxBatchSize);
+            Metrics.register("db.groupCommit.fallbacks", groupCommit::getFallbackCount);
+            Metrics.register("db.groupCommit.commitNanosTotal", groupCommit::getTotalCommitNanos);
+            Metrics.register("db.groupCommit.commitNanosMax", groupCommit::getMaxCommitNanos);
+            Metrics.register("db.groupCommit.queueDepth", groupCommit::getQueueDepth);
+        } else {
+            groupCommit = null;
+        }
+    }
+
+    /**
+     * Inserts a message into the message table.
+     * When group commit is enabled the message is queued and written together with other concurrent inserts.
      * @param message
      * @return The message created if successful, null otherwise
      */
     public Message createMessage(Message message) {
+        if (groupCommit != null) {
+            return groupCommit.submit(message).join();
+        }
         Connection connection = ConnectionUtil.getConnection();
         try {
             //Write SQL logic here
@@ -38,31 +96,148 @@ public class MessageDAO {
             }
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
+        }
+        return null;
+    }
+
+    /**
+     * Inserts many messages into the message table in a single transaction using JDBC batching.
+     * Either every message is inserted or none are.
+     * @param messages The messages to insert, assumed to be valid
+     * @return The messages created, with their generated ids and in the same order, or null if the insert failed
+     */
+    public List<Message> createMessages(List<Message> messages) {
+        List<Message> created = new ArrayList<>(messages.size());
+        if (messages.isEmpty()) {
+            return created;
+        }
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            connection.setAutoCommit(false);
+
+            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);" ;
+            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+
+            for (int start = 0; start < messages.size(); start += BATCH_CHUNK_SIZE) {
+                List<Message> chunk = messages.subList(start, Math.min(start + BATCH_CHUNK_SIZE, messages.size()));
+                for (Message message : chunk) {
+                    preparedStatement.setInt(1, message.getPosted_by());
+                    preparedStatement.setString(2, message.getMessage_text());
+                    preparedStatement.setLong(3, message.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                ResultSet pkeyResultSet = preparedStatement.getGeneratedKeys();
+                int i = 0;
+                while (pkeyResultSet.next() && i < chunk.size()) {
+                    Message message = chunk.get(i++);
+                    created.add(new Message((int) pkeyResultSet.getLong(1),
+                            message.getPosted_by(),
+                            message.getMessage_text(),
+                            message.getTime_posted_epoch()));
+                }
+            }
+
+            if (created.size() != messages.size()) {
+                connection.rollback();
+                return null;
+            }
+            connection.commit();
+            return created;
+        }catch(SQLException e){
+            if (connection != null) {
+                try {
+                    connection.rollback();
+                } catch (SQLException ex) {
+                    ex.printStackTrace();
+                }
+            }
+            e.printStackTrace();
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return null;
     }
 
     /**
      * Retreives all messages from the message table
-     * @return All messages
+     * @return All messages, oldest first
      */
     public List<Message> getAllMessages() {
         Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
         try {
             //Write SQL logic here
-            String sql = "SELECT * FROM message";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            PreparedStatement preparedStatement = connection.prepareStatement(ALL_MESSAGES_SQL);
             ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch"));
-                messages.add(message);
+            MessageRowMapper.mapAll(rs, messages);
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
+        }
+        return messages;
+    }
+
+    /**
+     * Walks every message in message_id order, handing each row to the sink as it is read.
+     * The query runs with H2 lazy execution and a bounded fetch size on a forward-only cursor, so rows are produced
+     * as the sink consumes them and the full table is never held in memory.
+     * @param sink Receives each message row
+     * @return True if every row was handed to the sink, false if the query or the sink failed
+     */
+    public boolean streamAllMessages(MessageSink sink) {
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            Statement sessionStmt = connection.createStatement();
+            sessionStmt.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            try {
+                String sql = "SELECT " + MessageRowMapper.COLUMNS + " FROM message ORDER BY message_id";
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+
+                // the lazy cursor has to be closed before lazy execution is switched off, even when the sink fails
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    MessageRowMapper.mapInto(rs, sink);
+                }
+                return true;
+            } finally {
+                sessionStmt.execute("SET LAZY_QUERY_EXECUTION FALSE");
+                sessionStmt.close();
             }
+        }catch(SQLException | IOException e){
+            System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves one page of messages in message_id order, starting after the given cursor.
+     * Uses the primary key to seek straight to the cursor instead of scanning and skipping earlier rows.
+     * @param afterId Only messages with a message_id greater than this are returned; 0 for the first page
+     * @param limit The maximum number of messages to return
+     * @return Up to limit messages with message_id greater than afterId
+     */
+    public List<Message> getMessagesAfter(int afterId, int limit) {
+        Connection connection = ConnectionUtil.getConnection();
+        List<Message> messages = new ArrayList<>(limit);
+        try {
+            PreparedStatement preparedStatement = connection.prepareStatement(MESSAGES_AFTER_SQL);
+
+            preparedStatement.setInt(1, afterId);
+            preparedStatement.setInt(2, limit);
+
+            ResultSet rs = preparedStatement.executeQuery();
+            MessageRowMapper.mapAll(rs, messages);
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return messages;
     }
@@ -70,125 +245,116 @@ public class MessageDAO {
     /**
      * Retrieves a message from the message table, identified by its id
      * @param id
-     * @return The message identified by id
+     * @return The message identified by id, or null if there is none
+     * @throws DataAccessException if the query failed, so the caller does not cache the message as missing
      */
     public Message getMessageById(int id){
         Connection connection = ConnectionUtil.getConnection();
         try {
             //Write SQL logic here
-            String sql = "SELECT * FROM message WHERE message_id = ?";
+            String sql = "SELECT " + MessageRowMapper.COLUMNS + " FROM message WHERE message_id = ?";
             PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
             //write preparedStatement's setInt method here.
             preparedStatement.setInt(1, id);
 
             ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch"));
-                return message;
+            if(rs.next()){
+                return MessageRowMapper.map(rs);
+            }
+        }catch(SQLException e){
+            System.out.println(e.getMessage());
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionUtil.release(connection);
+        }
+        return null;
+    }
+
+    /**
+     * Retrieves the messages with the given ids, in message_id order. Ids with no message are left out.
+     * @param ids
+     * @return The messages found, or null if the query failed
+     */
+    public List<Message> getMessagesByIds(int[] ids) {
+        List<Message> messages = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return messages;
+        }
+        Connection connection = ConnectionUtil.getConnection();
+        try {
+            String sql = "SELECT " + MessageRowMapper.COLUMNS + " FROM message WHERE message_id = ANY(?) ORDER BY message_id";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+
+            Integer[] boxed = new Integer[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                boxed[i] = ids[i];
             }
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", boxed));
+            ResultSet rs = preparedStatement.executeQuery();
+            MessageRowMapper.mapAll(rs, messages);
+            return messages;
         }catch(SQLException e){
             System.out.println(e.getMessage());
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return null;
     }
 
     /**
-     * Deletes a message from the message table given an id
+     * Deletes a message from the message table given an id.
+     * The deleted row is read back from H2's OLD TABLE delta table, so the delete and the read are one statement.
      * 
      * @param id
      * @return The message deleted if successful, null otherwise
      */
     public Message deleteMessage(int id) {
         Connection connection = ConnectionUtil.getConnection();
-        Message message = null;
         try {
-            connection.setAutoCommit(false);
-
-            String selectSQL = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement selectStmt = connection.prepareStatement(selectSQL);
+            String sql = "SELECT " + MessageRowMapper.COLUMNS + " FROM OLD TABLE (DELETE FROM message WHERE message_id = ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
-            selectStmt.setInt(1, id);
+            preparedStatement.setInt(1, id);
 
-            ResultSet rs = selectStmt.executeQuery();
+            ResultSet rs = preparedStatement.executeQuery();
             if (rs.next()) {
-                message = new Message(rs.getInt("message_id"), 
-                            rs.getInt("posted_by"), 
-                            rs.getString("message_text"),
-                            rs.getLong("time_posted_epoch"));
-            }
-
-            //Write SQL logic here
-            if(message != null) {
-                String deleteSQL = "DELETE FROM message WHERE message_id = ?";
-                PreparedStatement deleteStmt = connection.prepareStatement(deleteSQL);
-
-                deleteStmt.setInt(1, id);
-
-                deleteStmt.executeUpdate();
-                connection.commit();
-                return message;
+                return MessageRowMapper.map(rs);
             }
         }catch(SQLException e){
-            if (connection != null) {
-                try {
-                    connection.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
-            }
             e.printStackTrace();
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return null;
     }
 
     /**
      * Updates a message in the message table given an id and replacement text
-     * the text is assumed to be valid
+     * the text is assumed to be valid.
+     * The updated row is read back from H2's FINAL TABLE delta table, so the update and the read are one statement.
      * 
      * @param id
      * @param text
-     * @return The message with the new text if successful, null otherwise
+     * @return The message with the new text if successful, null if there is no message with the id
      */
     public Message updateMessage(int id, String text) {
         Connection connection = ConnectionUtil.getConnection();
         try {
-            connection.setAutoCommit(false);
-
-            //Write SQL logic here
-            String updateSQL = "UPDATE message SET message_text = ? WHERE message_id = ?";
-            PreparedStatement updateStmt = connection.prepareStatement(updateSQL);
-
-            updateStmt.setString(1, text);
-            updateStmt.setInt(2, id);
-
-            updateStmt.executeUpdate();
-            connection.commit();
-
-            String selectSQL = "SELECT * FROM message WHERE message_id = ?";
-            PreparedStatement selectStmt = connection.prepareStatement(selectSQL);
+            String sql = "SELECT " + MessageRowMapper.COLUMNS + " FROM FINAL TABLE (UPDATE message SET message_text = ? WHERE message_id = ?)";
+            PreparedStatement preparedStatement = connection.prepareStatement(sql);
 
-            selectStmt.setInt(1, id);
+            preparedStatement.setString(1, text);
+            preparedStatement.setInt(2, id);
 
-            ResultSet rs = selectStmt.executeQuery();
+            ResultSet rs = preparedStatement.executeQuery();
             if (rs.next()) {
-                return new Message(rs.getInt("message_id"), 
-                            rs.getInt("posted_by"), 
-                            rs.getString("message_text"),
-                            rs.getLong("time_posted_epoch"));
+                return MessageRowMapper.map(rs);
             }
         }catch(SQLException e){
-            if (connection != null) {
-                try {
-                    connection.rollback();
-                } catch (SQLException ex) {
-                    ex.printStackTrace();
-                }
-            }
             e.printStackTrace();
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return null;
     }
@@ -197,28 +363,25 @@ public class MessageDAO {
      * Retrieves all messages for an account given the account's id.
      * The account id should match the message's "posted_by" attribute
      * @param id
-     * @return A list of all messages posted by the account
+     * @return A list of all messages posted by the account, oldest first
+     * @throws DataAccessException if the query failed, so the caller does not cache the timeline as empty
      */
     public List<Message> getAllMessagesByUser(int id) {
         Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
         try {
             //Write SQL logic here
-            String sql = "SELECT * FROM message WHERE posted_by = ?";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+            PreparedStatement preparedStatement = connection.prepareStatement(MESSAGES_BY_USER_SQL);
 
             preparedStatement.setInt(1, id);
 
             ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                Message message = new Message(rs.getInt("message_id"),
-                        rs.getInt("posted_by"),
-                        rs.getString("message_text"),
-                        rs.getLong("time_posted_epoch"));
-                messages.add(message);
-            }
+            MessageRowMapper.mapAll(rs, messages);
         }catch(SQLException e){
             System.out.println(e.getMessage());
+            throw new DataAccessException(e);
+        } finally {
+            ConnectionUtil.release(connection);
         }
         return messages;
     }
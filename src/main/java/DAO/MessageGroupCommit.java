@@ -0,0 +1,215 @@
+package DAO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import Model.Message;
+
+/**
+ * Group commit for message inserts. Callers submit a message and wait on its future; a single flusher thread
+ * collects whatever is queued, up to maxBatchSize messages or until maxWaitMicros has passed since the first one
+ * arrived, and writes them with one batched insert and one commit. Every caller still receives its own Message
+ * with its generated id.
+ *
+ * If a batch fails as a whole (for example one message references a missing account) each message in it is
+ * retried on its own, so one bad message cannot fail the others.
+ */
+public class MessageGroupCommit {
+    private final MessageDAO messageDAO;
+    private final int maxBatchSize;
+    private final long maxWaitMicros;
+    private final BlockingQueue<PendingMessage> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder messagesFlushed = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private volatile int maxObservedBatchSize;
+    private volatile long maxCommitNanos;
+
+    /**
+     * @param messageDAO    DAO used to write each batch
+     * @param maxBatchSize  most messages written in a single commit
+     * @param maxWaitMicros longest time the first message of a batch waits for others to join it
+     */
+    public MessageGroupCommit(MessageDAO messageDAO, int maxBatchSize, long maxWaitMicros) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.messageDAO = messageDAO;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitMicros = maxWaitMicros;
+        this.flusher = new Thread(this::flushLoop, "message-group-commit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queues a message for the next group commit.
+     * @param message The message to insert, assumed to be valid
+     * @return A future completed with the created message, or with null if it could not be inserted
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        PendingMessage pending = new PendingMessage(message);
+        if (!running) {
+            pending.result.complete(null);
+            return pending.result;
+        }
+        queue.add(pending);
+        return pending.result;
+    }
+
+    /**
+     * Stops the flusher thread after it has written everything already queued.
+     */
+    public void close() {
+        running = false;
+        flusher.interrupt();
+    }
+
+    private void flushLoop() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingMessage first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // close() was called; write out whatever has been collected and drain the rest
+                queue.drainTo(batch, maxBatchSize - batch.size());
+            }
+            if (!batch.isEmpty()) {
+                try {
+                    flush(batch);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    for (PendingMessage pending : batch) {
+                        pending.result.complete(null);
+                    }
+                }
+                batch.clear();
+            }
+        }
+        // anything submitted while shutting down is not written
+        PendingMessage late;
+        while ((late = queue.poll()) != null) {
+            late.result.complete(null);
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) {
+            messages.add(pending.message);
+        }
+
+        long start = System.nanoTime();
+        List<Message> created = messageDAO.createMessages(messages);
+        recordCommit(batch.size(), System.nanoTime() - start);
+
+        if (created != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(created.get(i));
+            }
+            return;
+        }
+        fallbacks.increment();
+        for (PendingMessage pending : batch) {
+            List<Message> single = messageDAO.createMessages(Collections.singletonList(pending.message));
+            pending.result.complete(single != null ? single.get(0) : null);
+        }
+    }
+
+    private void recordCommit(int size, long nanos) {
+        batches.increment();
+        messagesFlushed.add(size);
+        commitNanos.add(nanos);
+        if (size > maxObservedBatchSize) {
+            maxObservedBatchSize = size;
+        }
+        if (nanos > maxCommitNanos) {
+            maxCommitNanos = nanos;
+        }
+    }
+
+    /**
+     * @return number of group commits performed
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return number of messages written through group commits
+     */
+    public long getMessageCount() {
+        return messagesFlushed.sum();
+    }
+
+    /**
+     * @return the largest batch written in one commit
+     */
+    public int getMaxBatchSize() {
+        return maxObservedBatchSize;
+    }
+
+    /**
+     * @return number of batches that failed and were retried one message at a time
+     */
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * @return total time spent inserting and committing batches, in nanoseconds
+     */
+    public long getTotalCommitNanos() {
+        return commitNanos.sum();
+    }
+
+    /**
+     * @return the slowest single batch insert and commit, in nanoseconds
+     */
+    public long getMaxCommitNanos() {
+        return maxCommitNanos;
+    }
+
+    /**
+     * @return number of messages waiting for the next commit
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private static class PendingMessage {
+        final Message message;
+        final CompletableFuture<Message> result = new CompletableFuture<>();
+
+        PendingMessage(Message message) {
+            this.message = message;
+        }
+    }
+}
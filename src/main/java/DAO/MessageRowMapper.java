@@ -0,0 +1,70 @@
+package DAO;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import Model.Message;
+
+/**
+ * Maps message rows to Message objects by column position. Every message query selects COLUMNS, in this order,
+ * so columns can be read by ordinal instead of paying a name lookup per column per row.
+ */
+public final class MessageRowMapper {
+    /**
+     * Select list every message query must use, in this exact order
+     */
+    public static final String COLUMNS = "message_id, posted_by, message_text, time_posted_epoch";
+
+    private static final int MESSAGE_ID = 1;
+    private static final int POSTED_BY = 2;
+    private static final int MESSAGE_TEXT = 3;
+    private static final int TIME_POSTED_EPOCH = 4;
+
+    private MessageRowMapper() {
+    }
+
+    /**
+     * Maps the current row.
+     * @param rs A result set positioned on a row selected with COLUMNS
+     * @return The message in that row
+     * @throws SQLException if a column cannot be read
+     */
+    public static Message map(ResultSet rs) throws SQLException {
+        return new Message(rs.getInt(MESSAGE_ID),
+                rs.getInt(POSTED_BY),
+                rs.getString(MESSAGE_TEXT),
+                rs.getLong(TIME_POSTED_EPOCH));
+    }
+
+    /**
+     * Maps every remaining row, appending to the given list.
+     * @param rs A result set selected with COLUMNS
+     * @param messages The list the messages are appended to
+     * @return The same list, for convenience
+     * @throws SQLException if a row cannot be read
+     */
+    public static List<Message> mapAll(ResultSet rs, List<Message> messages) throws SQLException {
+        while (rs.next()) {
+            messages.add(map(rs));
+        }
+        return messages;
+    }
+
+    /**
+     * Hands every remaining row to the sink without creating Message objects.
+     * @param rs A result set selected with COLUMNS
+     * @param sink Receives each row's columns
+     * @throws SQLException if a row cannot be read
+     * @throws IOException if the sink fails
+     */
+    public static void mapInto(ResultSet rs, MessageSink sink) throws SQLException, IOException {
+        while (rs.next()) {
+            sink.accept(rs.getInt(MESSAGE_ID),
+                    rs.getInt(POSTED_BY),
+                    rs.getString(MESSAGE_TEXT),
+                    rs.getLong(TIME_POSTED_EPOCH));
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package DAO;
+
+import java.io.IOException;
+
+/**
+ * Receives message rows one at a time as the DAO walks a result set, without a Message object being created for
+ * each row. Used for streaming listings that write every row straight to the response.
+ */
+@FunctionalInterface
+public interface MessageSink {
+    /**
+     * Called once per message row, in result set order.
+     * @param messageId the message_id column
+     * @param postedBy the posted_by column
+     * @param messageText the message_text column
+     * @param timePostedEpoch the time_posted_epoch column
+     * @throws IOException if the sink cannot accept the row, which stops the walk
+     */
+    void accept(int messageId, int postedBy, String messageText, long timePostedEpoch) throws IOException;
+}
@@ -0,0 +1,74 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a class that models the response to a lookup of several accounts by id: the public part of each account
+ * that was found, and the requested ids that have no account. Passwords are never part of a lookup.
+ */
+public class AccountLookupResult {
+    /**
+     * The accounts that were found, in the order their ids were requested.
+     */
+    public List<Profile> accounts = new ArrayList<>();
+    /**
+     * The requested ids that have no account, in the order they were requested.
+     */
+    public List<Integer> missing = new ArrayList<>();
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public AccountLookupResult() {
+    }
+
+    public List<Profile> getAccounts() {
+        return accounts;
+    }
+
+    public void setAccounts(List<Profile> accounts) {
+        this.accounts = accounts;
+    }
+
+    public List<Integer> getMissing() {
+        return missing;
+    }
+
+    public void setMissing(List<Integer> missing) {
+        this.missing = missing;
+    }
+
+    /**
+     * The fields of an Account that other users may see.
+     */
+    public static class Profile {
+        public int account_id;
+        public String username;
+
+        public Profile() {
+        }
+
+        public Profile(Account account) {
+            this.account_id = account.getAccount_id();
+            this.username = account.getUsername();
+        }
+
+        public int getAccount_id() {
+            return account_id;
+        }
+
+        public void setAccount_id(int account_id) {
+            this.account_id = account_id;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public void setUsername(String username) {
+            this.username = username;
+        }
+    }
+}
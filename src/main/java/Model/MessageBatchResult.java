@@ -0,0 +1,80 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a class that models the response to a batch message creation: the messages that were created, and the
+ * position and reason for every message in the request that was rejected.
+ */
+public class MessageBatchResult {
+    /**
+     * The messages that were persisted, including their generated message_id, in request order.
+     */
+    public List<Message> created = new ArrayList<>();
+    /**
+     * The messages from the request that were not persisted.
+     */
+    public List<Rejection> rejected = new ArrayList<>();
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageBatchResult() {
+    }
+
+    public List<Message> getCreated() {
+        return created;
+    }
+
+    public void setCreated(List<Message> created) {
+        this.created = created;
+    }
+
+    public List<Rejection> getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(List<Rejection> rejected) {
+        this.rejected = rejected;
+    }
+
+    /**
+     * A message that was rejected from a batch, identified by its zero-based position in the request array.
+     */
+    public static class Rejection {
+        /**
+         * Position of the rejected message in the request array
+         */
+        public int index;
+        /**
+         * Why the message was rejected, eg "message_text must be 1 to 255 characters"
+         */
+        public String reason;
+
+        public Rejection() {
+        }
+
+        public Rejection(int index, String reason) {
+            this.index = index;
+            this.reason = reason;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public void setIndex(int index) {
+            this.index = index;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        public void setReason(String reason) {
+            this.reason = reason;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package Model;
+
+/**
+ * This is a class that models one change to the message table: a message that was created, updated or deleted, and
+ * the sequence number the change was given. Sequence numbers increase with every change.
+ */
+public class MessageChange {
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+
+    /**
+     * Position of the change in the change sequence
+     */
+    public long seq;
+    /**
+     * One of created, updated or deleted
+     */
+    public String type;
+    /**
+     * The message after the change, or as it was when it was deleted
+     */
+    public Message message;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageChange() {
+    }
+
+    public MessageChange(long seq, String type, Message message) {
+        this.seq = seq;
+        this.type = type;
+        this.message = message;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public void setMessage(Message message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,54 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a class that models the response to an incremental sync: the message changes after the client's cursor,
+ * and the cursor to send next time.
+ */
+public class MessageChanges {
+    /**
+     * The changes, oldest first. A message may appear more than once; applying them in order gives its final state.
+     */
+    public List<MessageChange> changes = new ArrayList<>();
+    /**
+     * Cursor for the last change returned, or the caller's own cursor if there were no changes.
+     */
+    public String cursor;
+    /**
+     * True if more changes follow the last one returned and the client should ask again straight away.
+     */
+    public boolean more;
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageChanges() {
+    }
+
+    public List<MessageChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<MessageChange> changes) {
+        this.changes = changes;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    public boolean isMore() {
+        return more;
+    }
+
+    public void setMore(boolean more) {
+        this.more = more;
+    }
+}
@@ -0,0 +1,42 @@
+package Model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a class that models the response to a lookup of several messages by id: the messages that were found, and
+ * the requested ids that have no message.
+ */
+public class MessageLookupResult {
+    /**
+     * The messages that were found, in the order their ids were requested.
+     */
+    public List<Message> messages = new ArrayList<>();
+    /**
+     * The requested ids that have no message, in the order they were requested.
+     */
+    public List<Integer> missing = new ArrayList<>();
+
+    /**
+     * A default, no-args constructor, as well as correctly formatted getters and setters, are needed for
+     * Jackson Objectmapper to work.
+     */
+    public MessageLookupResult() {
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public List<Integer> getMissing() {
+        return missing;
+    }
+
+    public void setMissing(List<Integer> missing) {
+        this.missing = missing;
+    }
+}
@@ -0,0 +1,42 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of a keyset-paginated message listing. Messages are in the listing's order,
+ * and next is the cursor to pass as "after" to fetch the following page, or null when this is the last page.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, in message_id order for the full listing and in time order for one account's.
+     */
+    public List<Message> messages;
+    /**
+     * The cursor for the last message on this page when more messages follow, null otherwise.
+     */
+    public String next;
+
+    public MessagePage() {
+    }
+
+    public MessagePage(List<Message> messages, String next) {
+        this.messages = messages;
+        this.next = next;
+    }
+
+    public List<Message> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<Message> messages) {
+        this.messages = messages;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+}
@@ -1,13 +1,70 @@
 package Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import DAO.AccountDAO;
 import Model.Account;
+import Util.Metrics;
+import Util.ScalableBloomFilter;
+import Util.StripedVersionCounter;
 
 public class AccountService {
+    /**
+     * Most accounts kept in the by-id cache, set with the system property accounts.cache.maxSize
+     */
+    private static final long CACHE_MAX_SIZE = Long.getLong("accounts.cache.maxSize", 10_000);
+    /**
+     * How long a cached lookup is trusted, set with the system property accounts.cache.ttlSeconds
+     */
+    private static final long CACHE_TTL_SECONDS = Long.getLong("accounts.cache.ttlSeconds", 300);
+
+    /**
+     * Initial capacity of the username filter, set with the system property accounts.usernameFilter.expectedInsertions
+     */
+    private static final long FILTER_EXPECTED_INSERTIONS = Long.getLong("accounts.usernameFilter.expectedInsertions", 100_000);
+    /**
+     * Target false-positive rate of the username filter, set with the system property accounts.usernameFilter.fpp
+     */
+    private static final double FILTER_FALSE_POSITIVE_RATE = Double.parseDouble(
+            System.getProperty("accounts.usernameFilter.fpp", "0.01"));
+
     private AccountDAO accountDAO;
+    /**
+     * Bloom filter of every existing username, or null if it could not be built. A username the filter has never
+     * seen is definitely free, so doesUsernameExist can answer without a query.
+     */
+    private ScalableBloomFilter usernameFilter;
+    private final LongAdder usernameLookupsSkipped = new LongAdder();
+    private final LongAdder usernameLookupsQueried = new LongAdder();
+    private final LongAdder usernameFalsePositives = new LongAdder();
+    /**
+     * Read-through cache of account lookups by id. Misses are cached as empty so repeated lookups of an unknown
+     * id do not reach the database either; createAccount invalidates the new id.
+     * Loads run outside the cache, not in a Caffeine loader, because a loader runs inside ConcurrentHashMap.compute
+     * while holding a synchronized bin lock, which pins a virtual thread to its carrier for the whole query.
+     */
+    private Cache<Integer, Optional<Account>> accountsById;
+    /**
+     * Bumped by createAccount, so a load that raced with the account being created is not cached
+     */
+    private final StripedVersionCounter accountVersions = new StripedVersionCounter(1024);
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
 
     public AccountService() {
-        accountDAO = new AccountDAO();
+        this(new AccountDAO());
     }
 
     /**
@@ -19,19 +76,53 @@ public class AccountService {
      */
     public AccountService(AccountDAO accountDAO) {
         this.accountDAO = accountDAO;
+        this.accountsById = Caffeine.newBuilder()
+                .maximumSize(CACHE_MAX_SIZE)
+                .expireAfterWrite(Duration.ofSeconds(CACHE_TTL_SECONDS))
+                .recordStats()
+                .build();
+
+        Metrics.register("accounts.cache.hitRate", () -> accountsById.stats().hitRate());
+        Metrics.register("accounts.cache.hits", () -> accountsById.stats().hitCount());
+        Metrics.register("accounts.cache.misses", () -> accountsById.stats().missCount());
+        Metrics.register("accounts.cache.evictions", () -> accountsById.stats().evictionCount());
+        Metrics.register("accounts.cache.loadNanosAverage", () -> loads.sum() == 0 ? 0 : loadNanos.sum() / loads.sum());
+        Metrics.register("accounts.cache.size", () -> accountsById.estimatedSize());
+
+        ScalableBloomFilter filter = new ScalableBloomFilter(FILTER_EXPECTED_INSERTIONS, FILTER_FALSE_POSITIVE_RATE);
+        if (accountDAO.forEachUsername(filter::put)) {
+            usernameFilter = filter;
+            Metrics.register("accounts.usernameFilter.size", filter::size);
+            Metrics.register("accounts.usernameFilter.stages", filter::stageCount);
+            Metrics.register("accounts.usernameFilter.memoryBytes", filter::memoryBytes);
+            Metrics.register("accounts.usernameFilter.expectedFpp", filter::expectedFalsePositiveRate);
+        }
+        Metrics.register("accounts.usernameFilter.lookupsSkipped", usernameLookupsSkipped::sum);
+        Metrics.register("accounts.usernameFilter.lookupsQueried", usernameLookupsQueried::sum);
+        Metrics.register("accounts.usernameFilter.falsePositives", usernameFalsePositives::sum);
     }
 
     /**
-     * Checks the account table for an account with the specified username
+     * Checks the account table for an account with the specified username.
+     * Usernames the username filter has never seen are reported as free without querying the database; the
+     * unique constraint on username still guards against accounts created behind this service's back.
      * 
      * @param username
      * @return True if the account with the username exists, false otherwise
      */
     public boolean doesUsernameExist(String username) {
+        if (usernameFilter != null && !usernameFilter.mightContain(username)) {
+            usernameLookupsSkipped.increment();
+            return false;
+        }
+        usernameLookupsQueried.increment();
         if (accountDAO.getAccountByUsername(username) != null)
             return true;
-        else
+        else {
+            if (usernameFilter != null)
+                usernameFalsePositives.increment();
             return false;
+        }
     }
 
     /**
@@ -41,7 +132,15 @@ public class AccountService {
      * @return The account created if the creation was successful
      */
     public Account createAccount(Account account){
-        return accountDAO.createAccount(account);
+        Account created = accountDAO.createAccount(account);
+        if (created != null) {
+            accountVersions.bump(created.getAccount_id());
+            accountsById.invalidate(created.getAccount_id());
+            if (usernameFilter != null) {
+                usernameFilter.put(created.getUsername());
+            }
+        }
+        return created;
     }
 
     /**
@@ -54,7 +153,92 @@ public class AccountService {
         return accountDAO.getAccount(account);
     }
 
+    /**
+     * Retrieves an account by id through the account cache, going to the database only on a cache miss.
+     * A failed query throws out of here without caching anything, so the id is looked up again next time.
+     * 
+     * @param id
+     * @return The account if it exists, null otherwise
+     * @throws DAO.DataAccessException if the account had to be loaded and the query failed
+     */
     public Account getAccountById(int id) {
-        return accountDAO.getAccountById(id);
+        Optional<Account> cached = accountsById.getIfPresent(id);
+        if (cached != null) {
+            return cached.orElse(null);
+        }
+        long version = accountVersions.get(id);
+        long start = System.nanoTime();
+        Optional<Account> loaded = Optional.ofNullable(accountDAO.getAccountById(id));
+        loadNanos.add(System.nanoTime() - start);
+        loads.increment();
+        accountsById.asMap().compute(id, (key, current) ->
+                current != null || accountVersions.get(id) != version ? current : loaded);
+        return loaded.orElse(null);
+    }
+
+    /**
+     * Retrieves accounts by id through the account cache. Accounts missing from the cache are fetched with a single
+     * query and cached, ids with no account included.
+     * 
+     * @param ids
+     * @return The accounts that exist, in the order of ids
+     */
+    public List<Account> getAccountsByIds(int[] ids) {
+        Account[] resolved = new Account[ids.length];
+        int[] missing = new int[ids.length];
+        long[] versions = new long[ids.length];
+        int missingCount = 0;
+        for (int i = 0; i < ids.length; i++) {
+            Optional<Account> cached = accountsById.getIfPresent(ids[i]);
+            if (cached != null) {
+                resolved[i] = cached.orElse(null);
+            } else {
+                versions[missingCount] = accountVersions.get(ids[i]);
+                missing[missingCount++] = ids[i];
+            }
+        }
+        if (missingCount > 0) {
+            long start = System.nanoTime();
+            List<Account> loaded = accountDAO.getAccountsByIds(Arrays.copyOf(missing, missingCount));
+            loadNanos.add(System.nanoTime() - start);
+            loads.increment();
+            Map<Integer, Account> loadedById = new HashMap<>();
+            if (loaded != null) {
+                for (Account account : loaded) {
+                    loadedById.put(account.getAccount_id(), account);
+                }
+            }
+            for (int i = 0, m = 0; i < ids.length && m < missingCount; i++) {
+                if (ids[i] == missing[m]) {
+                    Optional<Account> account = Optional.ofNullable(loadedById.get(ids[i]));
+                    long version = versions[m];
+                    // a failed query is not cached, so its ids are tried again next time
+                    if (loaded != null) {
+                        accountsById.asMap().compute(ids[i], (key, current) ->
+                                current != null || accountVersions.get(key) != version ? current : account);
+                    }
+                    resolved[i] = account.orElse(null);
+                    m++;
+                }
+            }
+        }
+
+        List<Account> accounts = new ArrayList<>(ids.length);
+        for (Account account : resolved) {
+            if (account != null) {
+                accounts.add(account);
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Checks which of the given account ids exist, with a single lookup
+     * 
+     * @param ids
+     * @return The ids that belong to existing accounts
+     */
+    public Set<Integer> getExistingAccountIds(Collection<Integer> ids) {
+        return accountDAO.getExistingAccountIds(ids);
     }
 }
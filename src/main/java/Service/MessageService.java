@@ -1,15 +1,78 @@
 package Service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import DAO.MessageDAO;
+import DAO.MessageSink;
 import Model.Message;
+import Model.MessageChange;
+import Model.MessagePage;
+import Util.BroadcastRing;
+import Util.IntObjectCache;
+import Util.Metrics;
+import Util.SingleFlight;
+import Util.StripedVersionCounter;
+import Util.TimelineCache;
 
 public class MessageService {
+    /**
+     * Most messages kept in the by-id cache, set with the system property messages.cache.maxSize
+     */
+    private static final int CACHE_MAX_SIZE = Integer.getInteger("messages.cache.maxSize", 10_000);
+    /**
+     * Memory budget for per-account timelines, set with the system property messages.timelineCache.maxBytes
+     */
+    private static final long TIMELINE_CACHE_MAX_BYTES = Long.getLong("messages.timelineCache.maxBytes", 16L * 1024 * 1024);
+    /**
+     * Cached in place of a message to remember that no message has that id
+     */
+    private static final Message NOT_FOUND = new Message();
+    /**
+     * Number of version counters for individual messages and for accounts
+     */
+    private static final int VERSION_STRIPES = 4096;
+    /**
+     * Most recent message changes kept for live subscribers, set with the system property messages.changes.capacity
+     */
+    private static final int CHANGES_CAPACITY = Integer.getInteger("messages.changes.capacity", 65_536);
+
     private MessageDAO messageDAO;
+    /**
+     * Read-through cache of messages by id, including ids known not to exist. Every write through this service
+     * refreshes or invalidates the ids it touches.
+     */
+    private IntObjectCache<Message> messagesById;
+    /**
+     * Per-account message ids ordered by time posted. Messages themselves are resolved through messagesById, so
+     * creates and deletes patch a timeline and updates never need to touch it.
+     */
+    private TimelineCache timelines;
+    /**
+     * Concurrent cache misses for the same message, or the same account's timeline, share one query
+     */
+    private SingleFlight<Integer, Message> messageLoads;
+    private SingleFlight<Integer, List<Message>> timelineLoads;
+    /**
+     * Version counters bumped after every message write, once the caches reflect it. ETags are built from them, so
+     * a client's cached response can be revalidated without reading any messages. The epoch keeps ETags from an
+     * earlier run of the server, whose counters started from the same values, from matching.
+     */
+    private final String versionEpoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong messagesVersion = new AtomicLong();
+    private final StripedVersionCounter messageVersions = new StripedVersionCounter(VERSION_STRIPES);
+    private final StripedVersionCounter accountVersions = new StripedVersionCounter(VERSION_STRIPES);
+    /**
+     * Every message write, in the order the writes finished, after the caches and versions reflect it
+     */
+    private final BroadcastRing<MessageChange> changes = new BroadcastRing<>(CHANGES_CAPACITY);
 
     public MessageService() {
-        messageDAO = new MessageDAO();
+        this(new MessageDAO());
     }
 
     /**
@@ -21,6 +84,32 @@ public class MessageService {
      */
     public MessageService(MessageDAO messageDAO) {
         this.messageDAO = messageDAO;
+        this.messagesById = new IntObjectCache<>(CACHE_MAX_SIZE);
+
+        Metrics.register("messages.cache.hitRate", messagesById::hitRate);
+        Metrics.register("messages.cache.hits", messagesById::hitCount);
+        Metrics.register("messages.cache.misses", messagesById::missCount);
+        Metrics.register("messages.cache.evictions", messagesById::evictionCount);
+        Metrics.register("messages.cache.staleLoadsDropped", messagesById::staleLoadsDroppedCount);
+        Metrics.register("messages.cache.size", messagesById::size);
+        Metrics.register("messages.cache.capacity", messagesById::capacity);
+
+        this.timelines = new TimelineCache(TIMELINE_CACHE_MAX_BYTES);
+        Metrics.register("messages.timelineCache.hitRate", timelines::hitRate);
+        Metrics.register("messages.timelineCache.hits", timelines::hitCount);
+        Metrics.register("messages.timelineCache.misses", timelines::missCount);
+        Metrics.register("messages.timelineCache.rebuilds", timelines::rebuildCount);
+        Metrics.register("messages.timelineCache.staleRebuildsDropped", timelines::staleRebuildsDroppedCount);
+        Metrics.register("messages.timelineCache.evictions", timelines::evictionCount);
+        Metrics.register("messages.timelineCache.accounts", timelines::size);
+        Metrics.register("messages.timelineCache.memoryBytes", timelines::memoryBytes);
+        Metrics.register("messages.timelineCache.maxBytes", timelines::maxBytes);
+
+        this.messageLoads = new SingleFlight<>("messages.cache.singleFlight");
+        this.timelineLoads = new SingleFlight<>("messages.timelineCache.singleFlight");
+
+        Metrics.register("messages.changes.head", changes::head);
+        Metrics.register("messages.changes.capacity", changes::capacity);
     }
 
     /**
@@ -29,7 +118,133 @@ public class MessageService {
      * @return The message if it was successfully persisted, null otherwise
      */
     public Message createMessage(Message message) {
-        return messageDAO.createMessage(message);
+        Message created = messageDAO.createMessage(message);
+        if (created != null) {
+            messagesById.put(created.getMessage_id(), created);
+            timelines.add(created.getPosted_by(), created.getMessage_id(), created.getTime_posted_epoch());
+            bumpVersions(created);
+            publishChange(MessageChange.CREATED, created);
+        }
+        return created;
+    }
+
+    /**
+     * Use the messageDAO to persist many messages to the database in one transaction.
+     * @param messages
+     * @return The messages with their generated ids if they were all persisted, null otherwise
+     */
+    public List<Message> createMessages(List<Message> messages) {
+        List<Message> created = messageDAO.createMessages(messages);
+        if (created != null) {
+            for (Message message : created) {
+                messagesById.put(message.getMessage_id(), message);
+                timelines.add(message.getPosted_by(), message.getMessage_id(), message.getTime_posted_epoch());
+                bumpVersions(message);
+                publishChange(MessageChange.CREATED, message);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * @return A strong ETag for the message listing, which changes whenever any message is written
+     */
+    public String getMessagesEtag() {
+        return etag(messagesVersion.get());
+    }
+
+    /**
+     * @param id The message id
+     * @return A strong ETag for one message, which changes whenever that message is written
+     */
+    public String getMessageEtag(int id) {
+        return etag(messageVersions.get(id));
+    }
+
+    /**
+     * @param accountId The account id
+     * @return A strong ETag for an account's message listing, which changes whenever one of its messages is written
+     */
+    public String getAccountMessagesEtag(int accountId) {
+        return etag(accountVersions.get(accountId));
+    }
+
+    private String etag(long version) {
+        return "\"" + versionEpoch + "-" + version + "\"";
+    }
+
+    private void bumpVersions(Message message) {
+        messageVersions.bump(message.getMessage_id());
+        accountVersions.bump(message.getPosted_by());
+        messagesVersion.incrementAndGet();
+    }
+
+    private void publishChange(String type, Message message) {
+        changes.publish(seq -> new MessageChange(seq, type, message));
+    }
+
+    /**
+     * @return The ring of recent message changes, which subscribers read with their own cursors
+     */
+    public BroadcastRing<MessageChange> getChanges() {
+        return changes;
+    }
+
+    /**
+     * @param seq A change sequence
+     * @return The opaque cursor clients send back to get the changes after seq. It carries the same epoch as the
+     *         ETags, so a cursor from an earlier run of the server is never mistaken for one from this run
+     */
+    public String getChangeCursor(long seq) {
+        return versionEpoch + "-" + seq;
+    }
+
+    /**
+     * @return The cursor for the latest change
+     */
+    public String getLatestChangeCursor() {
+        return getChangeCursor(changes.head());
+    }
+
+    /**
+     * @param cursor A cursor from getChangeCursor
+     * @return The change sequence it stands for, or -1 if it is from an earlier run of the server, is older than the
+     *         changes still kept, or is not a cursor at all
+     */
+    public long parseChangeCursor(String cursor) {
+        int dash = cursor.lastIndexOf('-');
+        if (dash < 0 || !cursor.substring(0, dash).equals(versionEpoch)) {
+            return -1;
+        }
+        long seq;
+        try {
+            seq = Long.parseLong(cursor.substring(dash + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+        // the change right after seq must still be in the ring
+        return seq >= changes.oldest() - 1 && seq <= changes.head() ? seq : -1;
+    }
+
+    /**
+     * Reads the changes after a sequence from the in-memory change log, so the cost depends only on how many
+     * changes there are, never on the size of the message table
+     * @param since The last change sequence the caller has seen
+     * @param limit Most changes to return
+     * @return The changes after since, oldest first, or null if some of them are no longer kept
+     */
+    public List<MessageChange> getChangesSince(long since, int limit) {
+        long head = changes.head();
+        long end = Math.min(head, since + limit);
+        List<MessageChange> result = new ArrayList<>((int) Math.max(0, end - since));
+        for (long seq = since + 1; seq <= end; seq++) {
+            MessageChange change = changes.get(seq);
+            if (change == null) {
+                return null;
+            }
+            result.add(change);
+        }
+        return result;
     }
 
     /**
@@ -41,21 +256,127 @@ public class MessageService {
     }
 
     /**
-     * Use the messageDAO to retrieve a message, identified by its id
+     * Use the messageDAO to walk every message in the database without loading them all into memory.
+     * @param sink Receives each message row in message_id order
+     * @return True if every message was handed to the sink, false otherwise
+     */
+    public boolean streamAllMessages(MessageSink sink) {
+        return messageDAO.streamAllMessages(sink);
+    }
+
+    /**
+     * Use the messageDAO to retrieve one page of messages after a cursor.
+     * One extra row is fetched to tell whether another page follows.
+     * @param afterId The cursor from the previous page, or 0 for the first page
+     * @param limit The maximum number of messages on the page
+     * @return The page of messages, with a next cursor if more messages follow
+     */
+    public MessagePage getMessagesPage(int afterId, int limit) {
+        return toPage(messageDAO.getMessagesAfter(afterId, limit + 1), limit);
+    }
+
+    /**
+     * Retrieve one page of an account's messages after a cursor, oldest first, in the order of the account's timeline.
+     * The page's ids are cut straight from the cached timeline and the messages come from the message cache; on a
+     * timeline miss the timeline is rebuilt first and the page cut from the rebuilt messages. The next cursor comes
+     * from the timeline, so a page stays linked to the next one even if some of its messages could not be loaded.
+     * @param id The account id
+     * @param after A cursor from a previous page, see getTimelineCursor, or null for the first page
+     * @param limit The maximum number of messages on the page
+     * @return The page of messages, with a next cursor if more messages follow, or null if after is not a cursor
+     */
+    public MessagePage getMessagesPageByUser(int id, String after, int limit) {
+        long afterTime = Long.MIN_VALUE;
+        int afterId = Integer.MIN_VALUE;
+        if (after != null) {
+            int dash = after.lastIndexOf('-');
+            try {
+                afterTime = Long.parseLong(after.substring(0, Math.max(dash, 0)));
+                afterId = Integer.parseInt(after.substring(dash + 1));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        TimelineCache.Slice slice = timelines.page(id, afterTime, afterId, limit + 1);
+        if (slice != null) {
+            if (slice.ids.length > limit) {
+                List<Message> page = resolveMessages(Arrays.copyOf(slice.ids, limit));
+                return new MessagePage(page, getTimelineCursor(slice.times[limit - 1], slice.ids[limit - 1]));
+            }
+            return new MessagePage(resolveMessages(slice.ids), null);
+        }
+        List<Message> timeline = rebuildTimeline(id);
+        int from = 0;
+        while (from < timeline.size() && !isAfter(timeline.get(from), afterTime, afterId)) {
+            from++;
+        }
+        if (timeline.size() - from > limit) {
+            List<Message> page = timeline.subList(from, from + limit);
+            return new MessagePage(page, getTimelineCursor(page.get(limit - 1)));
+        }
+        return new MessagePage(timeline.subList(from, timeline.size()), null);
+    }
+
+    /**
+     * @param message The last message on a page of an account's messages
+     * @return The cursor clients send back to get the messages after it: its time posted and id
+     */
+    public String getTimelineCursor(Message message) {
+        return getTimelineCursor(message.getTime_posted_epoch(), message.getMessage_id());
+    }
+
+    private static String getTimelineCursor(long time, int id) {
+        return time + "-" + id;
+    }
+
+    private static boolean isAfter(Message message, long time, int id) {
+        return message.getTime_posted_epoch() != time ? message.getTime_posted_epoch() > time : message.getMessage_id() > id;
+    }
+
+    private MessagePage toPage(List<Message> messages, int limit) {
+        if (messages.size() > limit) {
+            List<Message> page = messages.subList(0, limit);
+            return new MessagePage(page, String.valueOf(page.get(limit - 1).getMessage_id()));
+        }
+        return new MessagePage(messages, null);
+    }
+
+    /**
+     * Retrieve a message, identified by its id, from the message cache, using the messageDAO on a cache miss.
+     * Ids with no message are cached too, so repeated lookups of missing ids do not reach the database, and
+     * concurrent misses for the same id share one query. A failed query caches nothing and is thrown to every
+     * caller that shared it.
      * @param id
      * @return A message indentified by id
+     * @throws DAO.DataAccessException if the message had to be loaded and the query failed
      */
     public Message getMessageById(int id) {
-        return messageDAO.getMessageById(id);
+        Message cached = messagesById.get(id);
+        if (cached != null) {
+            return cached == NOT_FOUND ? null : cached;
+        }
+        long stamp = messagesById.stamp(id);
+        Message message = messageLoads.load(id, stamp, () -> messageDAO.getMessageById(id));
+        messagesById.putIfUnchanged(id, message != null ? message : NOT_FOUND, stamp);
+        return message;
+    }
+
+    /**
+     * Retrieve messages by id through the message cache, fetching every cache miss with a single messageDAO query
+     * @param ids
+     * @return The messages that exist, in the order of ids
+     */
+    public List<Message> getMessagesByIds(int[] ids) {
+        return resolveMessages(ids);
     }
 
     /**
-     * Use the messageDAO to check whether a message exists in the database
+     * Check whether a message exists, using the message cache when possible
      * @param id
      * @return True if the message exists, false otherwise
      */
     public boolean doesMessageExist(int id) {
-        return messageDAO.getMessageById(id) != null;
+        return getMessageById(id) != null;
     }
 
     /**
@@ -64,7 +385,16 @@ public class MessageService {
      * @return The message deleted, or null if failed
      */
     public Message deleteMessage(int id) {
-        return messageDAO.deleteMessage(id);
+        Message deleted = messageDAO.deleteMessage(id);
+        if (deleted != null) {
+            messagesById.put(id, NOT_FOUND);
+            timelines.remove(deleted.getPosted_by(), id, deleted.getTime_posted_epoch());
+            bumpVersions(deleted);
+            publishChange(MessageChange.DELETED, deleted);
+        } else {
+            messagesById.invalidate(id);
+        }
+        return deleted;
     }
 
     /**
@@ -74,15 +404,77 @@ public class MessageService {
      * @return The message updated, or null if failed
      */
     public Message updateMessage(int id, String text) {
-        return messageDAO.updateMessage(id, text);
+        Message updated = messageDAO.updateMessage(id, text);
+        // invalidate rather than store the result: concurrent updates may finish in a different order than they
+        // committed, and the next read reloads whatever is current. Only the text changes, so the message keeps its
+        // place in its account's timeline.
+        messagesById.invalidate(id);
+        if (updated != null) {
+            bumpVersions(updated);
+            publishChange(MessageChange.UPDATED, updated);
+        }
+        return updated;
     }
 
     /**
-     * Use the messageDAO to get all messages for an account in the database
-     * @param id
-     * @return The list of messages for the account
+     * Looks up messages by id, in the order given, through the message cache. Messages missing from the cache are
+     * fetched in one query; ids with no message are left out.
      */
-    public List<Message> getAllMessagesByUser(int id) {
-        return messageDAO.getAllMessagesByUser(id);
+    private List<Message> resolveMessages(int[] ids) {
+        Message[] resolved = new Message[ids.length];
+        int[] missing = new int[ids.length];
+        long[] stamps = new long[ids.length];
+        int missingCount = 0;
+        for (int i = 0; i < ids.length; i++) {
+            Message cached = messagesById.get(ids[i]);
+            if (cached == null) {
+                stamps[missingCount] = messagesById.stamp(ids[i]);
+                missing[missingCount++] = ids[i];
+            } else if (cached != NOT_FOUND) {
+                resolved[i] = cached;
+            }
+        }
+        if (missingCount > 0) {
+            List<Message> loaded = messageDAO.getMessagesByIds(Arrays.copyOf(missing, missingCount));
+            Map<Integer, Message> loadedById = new HashMap<>();
+            if (loaded != null) {
+                for (Message message : loaded) {
+                    loadedById.put(message.getMessage_id(), message);
+                }
+            }
+            for (int i = 0, m = 0; i < ids.length && m < missingCount; i++) {
+                if (ids[i] == missing[m]) {
+                    Message message = loadedById.get(ids[i]);
+                    if (loaded != null) {
+                        messagesById.putIfUnchanged(ids[i], message != null ? message : NOT_FOUND, stamps[m]);
+                    }
+                    resolved[i] = message;
+                    m++;
+                }
+            }
+        }
+
+        List<Message> messages = new ArrayList<>(ids.length);
+        for (Message message : resolved) {
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+
+    private List<Message> rebuildTimeline(int id) {
+        long stamp = timelines.stamp(id);
+        // a failed query throws instead of returning an empty list, so an empty timeline is a real one and is
+        // cached like any other
+        List<Message> messages = timelineLoads.load(id, stamp, () -> messageDAO.getAllMessagesByUser(id));
+        int[] ids = new int[messages.size()];
+        long[] times = new long[messages.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = messages.get(i).getMessage_id();
+            times[i] = messages.get(i).getTime_posted_epoch();
+        }
+        timelines.putIfUnchanged(id, ids, times, stamp);
+        return messages;
     }
 }
@@ -0,0 +1,152 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An adaptive concurrency limit driven by observed latency, after the gradient algorithm of Netflix's
+ * concurrency-limits library. Callers take a permit with tryAcquire before doing the work and hand back the work's
+ * latency with release; when the limit is reached, tryAcquire fails at once so the caller can shed the request
+ * instead of queueing it.
+ *
+ * The limiter keeps a long-term average latency as its idea of the latency when nothing is queued. Each sample
+ * compares that to the latest latency: when latency rises above the long-term average (tolerance allowing), the
+ * limit shrinks in proportion; when it does not, the limit grows by its square root, which leaves room for a small
+ * queue. The limit is only raised while at least half of it is in use, so an idle period cannot inflate it.
+ */
+public class AdaptiveLimiter {
+	private static final double SMOOTHING = 0.2;
+	private static final double TOLERANCE = 1.5;
+	private static final double LONG_WINDOW = 600;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder shed = new LongAdder();
+
+	private volatile int limit;
+	private double estimatedLimit;
+	private double longRttNanos;
+
+	/**
+	 * @param initialLimit limit before any latency has been observed
+	 * @param minLimit     the limit never drops below this
+	 * @param maxLimit     the limit never rises above this
+	 */
+	public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+		if (minLimit < 1 || minLimit > maxLimit) {
+			throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= maxLimit");
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+		this.limit = (int) estimatedLimit;
+	}
+
+	/**
+	 * Registers the limiter's metrics: limit, inFlight, accepted, shed and longRttNanos.
+	 *
+	 * @param name metrics prefix, eg "api.limit.reads"
+	 * @return this limiter
+	 */
+	public AdaptiveLimiter registerMetrics(String name) {
+		Metrics.register(name + ".limit", this::getLimit);
+		Metrics.register(name + ".inFlight", this::getInFlight);
+		Metrics.register(name + ".accepted", accepted::sum);
+		Metrics.register(name + ".shed", shed::sum);
+		Metrics.register(name + ".longRttNanos", this::getLongRttNanos);
+		return this;
+	}
+
+	/**
+	 * @return true if a permit was taken and release must be called, false if the request should be shed
+	 */
+	public boolean tryAcquire() {
+		while (true) {
+			int current = inFlight.get();
+			if (current >= limit) {
+				shed.increment();
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				accepted.increment();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Returns a permit and feeds the work's latency into the limit.
+	 *
+	 * @param rttNanos time from tryAcquire until the work finished
+	 */
+	public void release(long rttNanos) {
+		int inFlightAtCompletion = inFlight.getAndDecrement();
+		onSample(rttNanos, inFlightAtCompletion);
+	}
+
+	/**
+	 * Returns a permit without a latency sample, for work that did not run normally, eg it failed at once.
+	 */
+	public void releaseWithoutSample() {
+		inFlight.decrementAndGet();
+	}
+
+	private synchronized void onSample(long rttNanos, int inFlightAtCompletion) {
+		double shortRtt = Math.max(1, rttNanos);
+		if (longRttNanos == 0) {
+			longRttNanos = shortRtt;
+		} else {
+			longRttNanos += (shortRtt - longRttNanos) / LONG_WINDOW;
+		}
+		// after a lasting drop in latency, let the long-term average catch up quickly so the limit can recover
+		if (longRttNanos / shortRtt > 2) {
+			longRttNanos *= 0.95;
+		}
+		if (inFlightAtCompletion < estimatedLimit / 2) {
+			return;
+		}
+
+		double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRttNanos / shortRtt));
+		double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+		newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+		estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+		limit = (int) estimatedLimit;
+	}
+
+	/**
+	 * @return the current concurrency limit
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return number of permits currently taken
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return number of permits granted
+	 */
+	public long getAcceptedCount() {
+		return accepted.sum();
+	}
+
+	/**
+	 * @return number of requests refused because the limit was reached
+	 */
+	public long getShedCount() {
+		return shed.sum();
+	}
+
+	/**
+	 * @return the long-term average latency, in nanoseconds
+	 */
+	public synchronized long getLongRttNanos() {
+		return (long) longRttNanos;
+	}
+}
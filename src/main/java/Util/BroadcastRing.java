@@ -0,0 +1,141 @@
+package Util;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+
+/**
+ * A fixed-size ring of the most recent events, numbered by a sequence that starts at 1 and never repeats. Events are
+ * published by one writer at a time and read by any number of readers, each of which keeps its own cursor: the
+ * sequence of the last event it has seen. Readers never block the writer; a reader that falls more than capacity
+ * events behind finds its next event overwritten and has to resynchronise from the head.
+ *
+ * Listeners are called after every publish, on the publishing thread, so they should only wake whoever does the
+ * actual reading. Readers that would rather not hold a thread while they wait can use awaitAfter instead.
+ */
+public class BroadcastRing<T> {
+	private final int mask;
+	private final AtomicReferenceArray<Entry<T>> entries;
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+	private final Set<CompletableFuture<Long>> waiters = ConcurrentHashMap.newKeySet();
+	private volatile long head;
+
+	/**
+	 * @param capacity events kept, rounded up to a power of two
+	 */
+	public BroadcastRing(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		int size = Integer.highestOneBit(Math.max(1, capacity - 1) << 1);
+		this.mask = size - 1;
+		this.entries = new AtomicReferenceArray<>(size);
+	}
+
+	/**
+	 * Appends an event, overwriting the oldest once the ring is full.
+	 *
+	 * @param event builds the event from its sequence; it is called while other publishers wait, so it should be cheap
+	 * @return the event's sequence
+	 */
+	public long publish(LongFunction<? extends T> event) {
+		long sequence;
+		// publishers take turns, so the ring itself only ever sees a single producer
+		synchronized (this) {
+			sequence = head + 1;
+			entries.set((int) sequence & mask, new Entry<>(sequence, event.apply(sequence)));
+			head = sequence;
+		}
+		for (Runnable listener : listeners) {
+			listener.run();
+		}
+		if (!waiters.isEmpty()) {
+			for (CompletableFuture<Long> waiter : waiters) {
+				waiter.complete(sequence);
+			}
+		}
+		return sequence;
+	}
+
+	/**
+	 * Waits, without holding a thread, for an event after the given sequence.
+	 *
+	 * @param sequence the sequence the caller has already seen
+	 * @param timeout  longest time to wait
+	 * @param unit     unit of timeout
+	 * @return a future completed with the head once it is past sequence, or with sequence itself on timeout.
+	 *         Waiters are completed on the publishing thread, so callers should move any real work elsewhere
+	 */
+	public CompletableFuture<Long> awaitAfter(long sequence, long timeout, TimeUnit unit) {
+		if (head > sequence) {
+			return CompletableFuture.completedFuture(head);
+		}
+		CompletableFuture<Long> waiter = new CompletableFuture<>();
+		waiters.add(waiter);
+		waiter.whenComplete((result, error) -> waiters.remove(waiter));
+		// an event published between the first check and the add would not have seen this waiter
+		if (head > sequence) {
+			waiter.complete(head);
+		}
+		return waiter.completeOnTimeout(sequence, timeout, unit);
+	}
+
+	/**
+	 * @param sequence the sequence of an event
+	 * @return the event, or null if it has not been published yet or has been overwritten
+	 */
+	public T get(long sequence) {
+		Entry<T> entry = entries.get((int) sequence & mask);
+		return entry != null && entry.sequence == sequence ? entry.value : null;
+	}
+
+	/**
+	 * @return the sequence of the latest event, or 0 if nothing has been published
+	 */
+	public long head() {
+		return head;
+	}
+
+	/**
+	 * @return the sequence of the oldest event still in the ring, or 1 if nothing has been overwritten yet
+	 */
+	public long oldest() {
+		return Math.max(1, head - mask);
+	}
+
+	/**
+	 * @return number of events the ring keeps
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * @param listener called on the publishing thread after each event is published
+	 */
+	public void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener a listener added earlier
+	 */
+	public void removeListener(Runnable listener) {
+		listeners.remove(listener);
+	}
+
+	private static class Entry<T> {
+		final long sequence;
+		final T value;
+
+		Entry(long sequence, T value) {
+			this.sequence = sequence;
+			this.value = value;
+		}
+	}
+}
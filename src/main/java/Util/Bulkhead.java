@@ -0,0 +1,208 @@
+package Util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded executor that isolates one kind of blocking work from the others. The bulkhead runs at most threads
+ * tasks at once and queues at most queueSize more; anything beyond that is rejected immediately instead of waiting,
+ * so a flood of one kind of work cannot tie up the threads or the queue of another.
+ *
+ * By default tasks run on a pool of threads platform threads. Given a taskThreads executor, eg one that starts a
+ * virtual thread per task, each task gets a thread of its own instead and a semaphore of threads permits does the
+ * bounding: a task that cannot get a permit waits on its own thread, which counts as queued.
+ *
+ * Metrics registered under the bulkhead's name: queueDepth, active, completed, rejected, totalWaitNanos and
+ * maxWaitNanos, where the wait is the time a task spent queued before a thread picked it up.
+ */
+public class Bulkhead {
+	private final String name;
+	/**
+	 * The pool tasks run on, or null when each task gets a thread from taskThreads
+	 */
+	private final ThreadPoolExecutor executor;
+	private final Executor taskThreads;
+	private final int threads;
+	private final int capacity;
+	/**
+	 * Permits to run, and the tasks admitted so far that have not finished, when tasks get threads from taskThreads
+	 */
+	private final Semaphore running;
+	private final AtomicInteger admitted = new AtomicInteger();
+
+	private final LongAdder completed = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder totalWaitNanos = new LongAdder();
+	private volatile long maxWaitNanos;
+
+	/**
+	 * @param name      used for thread names and as the metrics prefix, eg "db.bulkhead.reads"
+	 * @param threads   most tasks run at once
+	 * @param queueSize most tasks waiting for a thread
+	 */
+	public Bulkhead(String name, int threads, int queueSize) {
+		this(name, threads, queueSize, null);
+	}
+
+	/**
+	 * @param name        used for thread names and as the metrics prefix, eg "db.bulkhead.reads"
+	 * @param threads     most tasks run at once
+	 * @param queueSize   most tasks waiting to run
+	 * @param taskThreads runs each task on a new thread, eg a virtual thread, or null for a pool of platform threads
+	 */
+	public Bulkhead(String name, int threads, int queueSize, Executor taskThreads) {
+		this.name = name;
+		this.threads = threads;
+		this.capacity = threads + Math.max(1, queueSize);
+		this.taskThreads = taskThreads;
+		if (taskThreads != null) {
+			this.executor = null;
+			this.running = new Semaphore(threads, true);
+		} else {
+			AtomicInteger threadNumber = new AtomicInteger();
+			this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<>(Math.max(1, queueSize)), runnable -> {
+						Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					});
+			this.executor.allowCoreThreadTimeOut(true);
+			this.running = null;
+		}
+
+		Metrics.register(name + ".queueDepth", this::getQueueDepth);
+		Metrics.register(name + ".active", this::getActiveCount);
+		Metrics.register(name + ".completed", completed::sum);
+		Metrics.register(name + ".rejected", rejected::sum);
+		Metrics.register(name + ".totalWaitNanos", totalWaitNanos::sum);
+		Metrics.register(name + ".maxWaitNanos", () -> maxWaitNanos);
+	}
+
+	/**
+	 * Queues a task on the bulkhead.
+	 *
+	 * @param task the task
+	 * @return a future completed with the task's result, or with whatever it threw
+	 * @throws RejectedExecutionException if every thread is busy and the queue is full
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> task) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		long queuedAt = System.nanoTime();
+		Runnable run = () -> {
+			recordWait(System.nanoTime() - queuedAt);
+			try {
+				future.complete(task.call());
+			} catch (Throwable t) {
+				future.completeExceptionally(t);
+			} finally {
+				completed.increment();
+			}
+		};
+		try {
+			if (executor != null) {
+				executor.execute(run);
+			} else {
+				executeOnOwnThread(run);
+			}
+		} catch (RejectedExecutionException e) {
+			rejected.increment();
+			throw e;
+		}
+		return future;
+	}
+
+	private void executeOnOwnThread(Runnable run) {
+		if (admitted.incrementAndGet() > capacity) {
+			admitted.decrementAndGet();
+			throw new RejectedExecutionException(name + " is full");
+		}
+		try {
+			taskThreads.execute(() -> {
+				running.acquireUninterruptibly();
+				try {
+					run.run();
+				} finally {
+					running.release();
+					admitted.decrementAndGet();
+				}
+			});
+		} catch (RuntimeException e) {
+			admitted.decrementAndGet();
+			throw e instanceof RejectedExecutionException ? e : new RejectedExecutionException(e);
+		}
+	}
+
+	private void recordWait(long nanos) {
+		totalWaitNanos.add(nanos);
+		if (nanos > maxWaitNanos) {
+			maxWaitNanos = nanos;
+		}
+	}
+
+	/**
+	 * @return the bulkhead's name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return number of tasks waiting for a thread
+	 */
+	public int getQueueDepth() {
+		if (executor != null) {
+			return executor.getQueue().size();
+		}
+		return Math.max(0, admitted.get() - getActiveCount());
+	}
+
+	/**
+	 * @return number of tasks running
+	 */
+	public int getActiveCount() {
+		return executor != null ? executor.getActiveCount() : threads - running.availablePermits();
+	}
+
+	/**
+	 * @return true if each task runs on a thread of its own rather than on a pool
+	 */
+	public boolean isThreadPerTask() {
+		return executor == null;
+	}
+
+	/**
+	 * @return number of tasks rejected because the bulkhead was full
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	/**
+	 * @return number of tasks that have finished
+	 */
+	public long getCompletedCount() {
+		return completed.sum();
+	}
+
+	/**
+	 * @return total time tasks spent queued, in nanoseconds
+	 */
+	public long getTotalWaitNanos() {
+		return totalWaitNanos.sum();
+	}
+
+	/**
+	 * @return the longest time a task spent queued, in nanoseconds
+	 */
+	public long getMaxWaitNanos() {
+		return maxWaitNanos;
+	}
+}
@@ -0,0 +1,375 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+/**
+ * A bounded pool of physical JDBC connections. At most maxSize connections are ever open at once; callers that
+ * find the pool exhausted wait up to borrowTimeoutMillis before failing. Connections handed out by the pool are
+ * proxies, so calling close() on them returns the physical connection to the pool instead of closing it.
+ *
+ * Each physical connection carries a StatementCache, so prepareStatement on a pooled connection reuses a
+ * statement already prepared for the same SQL text instead of having H2 parse and plan it again.
+ */
+public class ConnectionPool {
+
+	/**
+	 * Source of new physical connections
+	 */
+	private final DataSource dataSource;
+	/**
+	 * Upper bound on the number of physical connections
+	 */
+	private final int maxSize;
+	/**
+	 * How long a borrower waits for a free connection before giving up
+	 */
+	private final long borrowTimeoutMillis;
+	/**
+	 * Seconds passed to Connection.isValid when validating an idle connection on borrow
+	 */
+	private final int validationTimeoutSeconds;
+	/**
+	 * Maximum number of prepared statements cached per physical connection, 0 to disable caching
+	 */
+	private final int statementCacheSize;
+
+	/**
+	 * Physical connections that are open but not currently lent out. Most recently returned connections are
+	 * handed out first, so the connections in steady use stay warm; the pool never closes idle connections on its own,
+	 * only ones that fail validation on borrow.
+	 */
+	private final BlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+	/**
+	 * One permit per connection that may still be borrowed
+	 */
+	private final Semaphore permits;
+
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger open = new AtomicInteger();
+	private final LongAdder borrows = new LongAdder();
+	private final LongAdder timeouts = new LongAdder();
+	private final LongAdder validationFailures = new LongAdder();
+	private final LongAdder waitNanos = new LongAdder();
+	private volatile long maxWaitNanos;
+	private final LongAdder statementHits = new LongAdder();
+	private final LongAdder statementMisses = new LongAdder();
+	private final LongAdder statementEvictions = new LongAdder();
+
+	/**
+	 * @param dataSource               source of physical connections
+	 * @param maxSize                  maximum number of open connections
+	 * @param minIdle                  number of connections to open up front
+	 * @param borrowTimeoutMillis      how long getConnection waits on an exhausted pool
+	 * @param validationTimeoutSeconds timeout for the validity check performed on borrow
+	 * @param statementCacheSize       prepared statements cached per connection, 0 to disable
+	 */
+	public ConnectionPool(DataSource dataSource, int maxSize, int minIdle, long borrowTimeoutMillis,
+			int validationTimeoutSeconds, int statementCacheSize) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be at least 1");
+		}
+		this.dataSource = dataSource;
+		this.maxSize = maxSize;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.validationTimeoutSeconds = validationTimeoutSeconds;
+		this.statementCacheSize = statementCacheSize;
+		this.permits = new Semaphore(maxSize, true);
+		prefill(Math.min(minIdle, maxSize));
+	}
+
+	/**
+	 * Opens count physical connections ahead of time so the first requests do not pay the connect cost.
+	 */
+	private void prefill(int count) {
+		for (int i = 0; i < count; i++) {
+			try {
+				idle.offerLast(openPhysical());
+			} catch (SQLException e) {
+				e.printStackTrace();
+				return;
+			}
+		}
+	}
+
+	private PhysicalConnection openPhysical() throws SQLException {
+		Connection connection = dataSource.getConnection();
+		open.incrementAndGet();
+		StatementCache statements = statementCacheSize > 0
+				? new StatementCache(connection, statementCacheSize, statementHits, statementMisses, statementEvictions)
+				: null;
+		return new PhysicalConnection(connection, statements);
+	}
+
+	private void closePhysical(PhysicalConnection physical) {
+		open.decrementAndGet();
+		try {
+			if (physical.statements != null) {
+				physical.statements.clear();
+			}
+			physical.connection.close();
+		} catch (SQLException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Borrows a connection from the pool, waiting up to the borrow timeout if every connection is in use.
+	 * Idle connections are validated before being handed out and replaced if they are broken.
+	 *
+	 * @return a pooled connection; closing it returns it to the pool
+	 * @throws SQLException if no connection became available in time or a new one could not be opened
+	 */
+	public Connection borrow() throws SQLException {
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+				timeouts.increment();
+				throw new SQLTransientConnectionException(
+						"Timed out after " + borrowTimeoutMillis + "ms waiting for a connection (maxSize=" + maxSize + ")");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLTransientConnectionException("Interrupted while waiting for a connection", e);
+		}
+		recordWait(System.nanoTime() - start);
+
+		try {
+			PhysicalConnection physical = takeValidIdle();
+			if (physical == null) {
+				physical = openPhysical();
+			}
+			active.incrementAndGet();
+			borrows.increment();
+			return wrap(physical);
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private PhysicalConnection takeValidIdle() {
+		PhysicalConnection physical;
+		while ((physical = idle.pollFirst()) != null) {
+			try {
+				if (physical.connection.isValid(validationTimeoutSeconds)) {
+					return physical;
+				}
+			} catch (SQLException e) {
+				// fall through and discard
+			}
+			validationFailures.increment();
+			closePhysical(physical);
+		}
+		return null;
+	}
+
+	private void recordWait(long nanos) {
+		waitNanos.add(nanos);
+		if (nanos > maxWaitNanos) {
+			maxWaitNanos = nanos;
+		}
+	}
+
+	/**
+	 * Called when a pooled connection is closed. Any open transaction is rolled back and auto-commit restored so
+	 * the next borrower gets a connection in its default state.
+	 */
+	private void giveBack(PhysicalConnection physical) {
+		active.decrementAndGet();
+		try {
+			Connection connection = physical.connection;
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+			connection.clearWarnings();
+			idle.offerFirst(physical);
+		} catch (SQLException e) {
+			closePhysical(physical);
+		} finally {
+			permits.release();
+		}
+	}
+
+	private Connection wrap(PhysicalConnection physical) {
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new PooledConnection(physical));
+	}
+
+	/**
+	 * @return the configured maximum pool size
+	 */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * @return number of connections currently lent out
+	 */
+	public int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * @return number of open connections waiting in the pool
+	 */
+	public int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * @return number of open physical connections, lent out or idle
+	 */
+	public int getOpen() {
+		return open.get();
+	}
+
+	/**
+	 * @return number of callers currently blocked waiting for a connection
+	 */
+	public int getWaiting() {
+		return permits.getQueueLength();
+	}
+
+	/**
+	 * @return total number of successful borrows
+	 */
+	public long getBorrowCount() {
+		return borrows.sum();
+	}
+
+	/**
+	 * @return number of borrows that gave up after the borrow timeout
+	 */
+	public long getTimeoutCount() {
+		return timeouts.sum();
+	}
+
+	/**
+	 * @return number of idle connections discarded because they failed validation
+	 */
+	public long getValidationFailureCount() {
+		return validationFailures.sum();
+	}
+
+	/**
+	 * @return total time borrowers have spent waiting for a connection, in nanoseconds
+	 */
+	public long getTotalWaitNanos() {
+		return waitNanos.sum();
+	}
+
+	/**
+	 * @return the longest single wait for a connection, in nanoseconds
+	 */
+	public long getMaxWaitNanos() {
+		return maxWaitNanos;
+	}
+
+	/**
+	 * @return number of prepareStatement calls answered from a statement cache
+	 */
+	public long getStatementCacheHits() {
+		return statementHits.sum();
+	}
+
+	/**
+	 * @return number of prepareStatement calls that had to prepare a new statement
+	 */
+	public long getStatementCacheMisses() {
+		return statementMisses.sum();
+	}
+
+	/**
+	 * @return number of cached statements closed to make room for newer ones
+	 */
+	public long getStatementCacheEvictions() {
+		return statementEvictions.sum();
+	}
+
+	/**
+	 * An open physical connection together with the statements cached on it. Both stay with the pool across
+	 * borrows.
+	 */
+	private static class PhysicalConnection {
+		final Connection connection;
+		final StatementCache statements;
+
+		PhysicalConnection(Connection connection, StatementCache statements) {
+			this.connection = connection;
+			this.statements = statements;
+		}
+	}
+
+	/**
+	 * Invocation handler behind every connection the pool lends out. close() returns the physical connection
+	 * exactly once; prepareStatement(String) and prepareStatement(String, int) go through the statement cache;
+	 * every other call is forwarded until the connection is closed.
+	 */
+	private class PooledConnection implements InvocationHandler {
+		private PhysicalConnection physical;
+
+		PooledConnection(PhysicalConnection physical) {
+			this.physical = physical;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			switch (name) {
+			case "close":
+				if (physical != null) {
+					PhysicalConnection returning = physical;
+					physical = null;
+					giveBack(returning);
+				}
+				return null;
+			case "isClosed":
+				return physical == null || physical.connection.isClosed();
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "toString":
+				return "PooledConnection[" + (physical == null ? "returned" : physical.connection) + "]";
+			default:
+				break;
+			}
+			if (physical == null) {
+				throw new SQLException("Connection has already been returned to the pool");
+			}
+			if ("prepareStatement".equals(name) && physical.statements != null && isCacheable(args)) {
+				int autoGeneratedKeys = args.length == 2 ? (Integer) args[1] : Statement.NO_GENERATED_KEYS;
+				return physical.statements.prepare((String) args[0], autoGeneratedKeys);
+			}
+			try {
+				return method.invoke(physical.connection, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+
+		/**
+		 * Only prepareStatement(String) and prepareStatement(String, int autoGeneratedKeys) are cached; the
+		 * overloads taking result set options or key column lists are passed straight through.
+		 */
+		private boolean isCacheable(Object[] args) {
+			return args.length == 1 || (args.length == 2 && args[1] instanceof Integer);
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package Util;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown by ConnectionUtil.getConnection when no connection could be borrowed from the pool, for instance because
+ * every connection stayed in use past db.pool.borrowTimeoutMillis. The database is overloaded rather than broken,
+ * so callers should back off and retry instead of treating it as a failed query.
+ */
+public class ConnectionUnavailableException extends RuntimeException {
+
+	/**
+	 * @param cause the error the pool failed with
+	 */
+	public ConnectionUnavailableException(SQLException cause) {
+		super(cause.getMessage(), cause);
+	}
+}
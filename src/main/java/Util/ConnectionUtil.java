@@ -13,7 +13,11 @@ import org.h2.tools.RunScript;
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are lent out by a bounded ConnectionPool. Callers must close the
+ * connection when they are done with it, which returns it to the pool. The pool
+ * can be sized with the system properties db.pool.maxSize, db.pool.minIdle,
+ * db.pool.borrowTimeoutMillis, db.pool.validationTimeoutSeconds and
+ * db.pool.statementCacheSize (prepared statements cached per connection).
  */
 public class ConnectionUtil {
 
@@ -32,43 +36,112 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource that opens the physical connections handed to the pool.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource dataSource = new JdbcDataSource();
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * Bounded pool of connections. Closing a connection obtained from getConnection returns it here.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * static initialization block to establish credentials for the DataSource and warm up the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("db.pool.maxSize", 10),
+				Integer.getInteger("db.pool.minIdle", 2),
+				Long.getLong("db.pool.borrowTimeoutMillis", 5000),
+				Integer.getInteger("db.pool.validationTimeoutSeconds", 1),
+				Integer.getInteger("db.pool.statementCacheSize", 32));
+
+		Metrics.register("db.pool.max", pool::getMaxSize);
+		Metrics.register("db.pool.active", pool::getActive);
+		Metrics.register("db.pool.idle", pool::getIdle);
+		Metrics.register("db.pool.open", pool::getOpen);
+		Metrics.register("db.pool.waiting", pool::getWaiting);
+		Metrics.register("db.pool.borrows", pool::getBorrowCount);
+		Metrics.register("db.pool.timeouts", pool::getTimeoutCount);
+		Metrics.register("db.pool.validationFailures", pool::getValidationFailureCount);
+		Metrics.register("db.pool.waitNanosTotal", pool::getTotalWaitNanos);
+		Metrics.register("db.pool.waitNanosMax", pool::getMaxWaitNanos);
+		Metrics.register("db.statementCache.hits", pool::getStatementCacheHits);
+		Metrics.register("db.statementCache.misses", pool::getStatementCacheMisses);
+		Metrics.register("db.statementCache.evictions", pool::getStatementCacheEvictions);
+
+		migrate();
+	}
+
+	/**
+	 * Applies any pending schema migrations, see SchemaMigrator.
+	 */
+	private static void migrate() {
+		Connection connection = getConnection();
+		try {
+			SchemaMigrator.migrate(connection);
+		} catch (SQLException e) {
+			e.printStackTrace();
+		} finally {
+			release(connection);
+		}
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return an active connection to the database, borrowed from the pool. Close it to return it.
+	 * @throws ConnectionUnavailableException if the pool could not hand out a connection in time
 	 */
 	public static Connection getConnection() {
 		try {
-			return pool.getConnection();
+			return pool.borrow();
+		} catch (SQLException e) {
+			throw new ConnectionUnavailableException(e);
+		}
+	}
+
+	/**
+	 * Returns a connection obtained from getConnection to the pool. Safe to call with null or with a connection
+	 * that has already been released.
+	 *
+	 * @param connection the connection to release
+	 */
+	public static void release(Connection connection) {
+		if (connection == null) {
+			return;
+		}
+		try {
+			connection.close();
 		} catch (SQLException e) {
 			e.printStackTrace();
 		}
+	}
 
-		return null;
+	/**
+	 * @return the pool backing getConnection, for inspecting its statistics
+	 */
+	public static ConnectionPool getPool() {
+		return pool;
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
 	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * file in resources and then re-apply the schema migrations. This will be
+	 * performed before every test.
 	 */
 	public static void resetTestDatabase() {
+		Connection connection = getConnection();
 		try {
 			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
+			RunScript.execute(connection, sqlReader);
+			SchemaMigrator.migrate(connection);
 		} catch (SQLException | FileNotFoundException e) {
 			e.printStackTrace();
+		} finally {
+			release(connection);
 		}
 	}
 }
@@ -0,0 +1,260 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, concurrent cache keyed by primitive int, so lookups never box their key.
+ *
+ * The cache is set-associative: each key hashes to one set of WAYS slots, and a full set evicts with the CLOCK
+ * (second chance) policy, preferring entries that have not been read since the last sweep. Reads are lock-free;
+ * writes take a lock striped by set.
+ *
+ * Read-through callers that load a value from the database should take a stamp(key) before loading and store the
+ * result with putIfUnchanged, so a load that raced with an invalidation cannot put a stale value back.
+ *
+ * @param <V> the cached value type
+ */
+public class IntObjectCache<V> {
+	private static final int WAYS = 8;
+	private static final int LOCK_STRIPES = 64;
+
+	private final int setMask;
+	private final AtomicReferenceArray<Entry<V>> slots;
+	/**
+	 * One counter per set, bumped by every authoritative write and invalidation in that set
+	 */
+	private final AtomicLongArray stamps;
+	private final ReentrantLock[] locks;
+	private final AtomicInteger size = new AtomicInteger();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private final LongAdder staleLoadsDropped = new LongAdder();
+
+	/**
+	 * @param maximumSize upper bound on the number of entries; rounded up to a whole number of sets
+	 */
+	public IntObjectCache(int maximumSize) {
+		int sets = Integer.highestOneBit(Math.max(1, (maximumSize + WAYS - 1) / WAYS) * 2 - 1);
+		this.setMask = sets - 1;
+		this.slots = new AtomicReferenceArray<>(sets * WAYS);
+		this.stamps = new AtomicLongArray(sets);
+		this.locks = new ReentrantLock[Math.min(LOCK_STRIPES, sets)];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	/**
+	 * @param key the key to look up
+	 * @return the cached value, or null if the key is not cached
+	 */
+	public V get(int key) {
+		int base = setOf(key) * WAYS;
+		for (int i = 0; i < WAYS; i++) {
+			Entry<V> entry = slots.get(base + i);
+			if (entry != null && entry.key == key) {
+				if (!entry.referenced) {
+					entry.referenced = true;
+				}
+				hits.increment();
+				return entry.value;
+			}
+		}
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * @param key the key about to be loaded
+	 * @return a stamp to pass to putIfUnchanged once the load finishes
+	 */
+	public long stamp(int key) {
+		return stamps.get(setOf(key));
+	}
+
+	/**
+	 * Stores a value that reflects the current state of the source, replacing any cached value.
+	 *
+	 * @param key   the key
+	 * @param value the value, not null
+	 */
+	public void put(int key, V value) {
+		int set = setOf(key);
+		ReentrantLock lock = lockFor(set);
+		lock.lock();
+		try {
+			stamps.incrementAndGet(set);
+			store(set, key, value);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stores a loaded value unless the key's set was written or invalidated since the stamp was taken, in which case
+	 * the loaded value may be stale and is dropped.
+	 *
+	 * @param key   the key
+	 * @param value the loaded value, not null
+	 * @param stamp the stamp taken before loading
+	 * @return true if the value was stored
+	 */
+	public boolean putIfUnchanged(int key, V value, long stamp) {
+		int set = setOf(key);
+		ReentrantLock lock = lockFor(set);
+		lock.lock();
+		try {
+			if (stamps.get(set) != stamp) {
+				staleLoadsDropped.increment();
+				return false;
+			}
+			store(set, key, value);
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a key so the next read goes back to the source.
+	 *
+	 * @param key the key to remove
+	 */
+	public void invalidate(int key) {
+		int set = setOf(key);
+		ReentrantLock lock = lockFor(set);
+		lock.lock();
+		try {
+			stamps.incrementAndGet(set);
+			int base = set * WAYS;
+			for (int i = 0; i < WAYS; i++) {
+				Entry<V> entry = slots.get(base + i);
+				if (entry != null && entry.key == key) {
+					slots.set(base + i, null);
+					size.decrementAndGet();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Called with the set's lock held. Replaces the key's entry if present, otherwise fills an empty slot, otherwise
+	 * evicts with a CLOCK sweep over the set.
+	 */
+	private void store(int set, int key, V value) {
+		int base = set * WAYS;
+		int empty = -1;
+		for (int i = 0; i < WAYS; i++) {
+			Entry<V> entry = slots.get(base + i);
+			if (entry == null) {
+				if (empty < 0) {
+					empty = i;
+				}
+			} else if (entry.key == key) {
+				slots.set(base + i, new Entry<>(key, value));
+				return;
+			}
+		}
+		if (empty >= 0) {
+			slots.set(base + empty, new Entry<>(key, value));
+			size.incrementAndGet();
+			return;
+		}
+		int victim = 0;
+		for (int sweep = 0; sweep < 2 * WAYS; sweep++) {
+			Entry<V> entry = slots.get(base + (sweep % WAYS));
+			if (!entry.referenced) {
+				victim = sweep % WAYS;
+				break;
+			}
+			entry.referenced = false;
+		}
+		slots.set(base + victim, new Entry<>(key, value));
+		evictions.increment();
+	}
+
+	private int setOf(int key) {
+		// murmur3 fmix32 so that sequential ids spread across sets
+		int h = key;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h & setMask;
+	}
+
+	private ReentrantLock lockFor(int set) {
+		return locks[set & (locks.length - 1)];
+	}
+
+	/**
+	 * @return number of entries currently cached
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	/**
+	 * @return number of entries the cache can hold
+	 */
+	public int capacity() {
+		return slots.length();
+	}
+
+	/**
+	 * @return number of reads answered from the cache
+	 */
+	public long hitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of reads that found nothing cached
+	 */
+	public long missCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return fraction of reads answered from the cache
+	 */
+	public double hitRate() {
+		long hit = hits.sum();
+		long total = hit + misses.sum();
+		return total == 0 ? 1.0 : (double) hit / total;
+	}
+
+	/**
+	 * @return number of entries evicted to make room for others
+	 */
+	public long evictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return number of loaded values dropped because their key changed during the load
+	 */
+	public long staleLoadsDroppedCount() {
+		return staleLoadsDropped.sum();
+	}
+
+	private static class Entry<V> {
+		final int key;
+		final V value;
+		volatile boolean referenced;
+
+		Entry(int key, V value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+}
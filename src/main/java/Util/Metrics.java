@@ -0,0 +1,43 @@
+package Util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * The Metrics class is a small registry of named gauges. Components such as the connection pool register a
+ * supplier for each value they want to expose, and the controller publishes a snapshot of every registered value
+ * on GET localhost:8080/metrics.
+ */
+public class Metrics {
+
+	/**
+	 * Registered gauges keyed by their dotted metric name, eg "db.pool.active"
+	 */
+	private static final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+	private Metrics() {
+	}
+
+	/**
+	 * Registers (or replaces) a gauge under the given name.
+	 *
+	 * @param name  the dotted metric name
+	 * @param gauge supplier that reads the current value
+	 */
+	public static void register(String name, Supplier<Number> gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * @return the current value of every registered gauge, sorted by name
+	 */
+	public static Map<String, Number> snapshot() {
+		Map<String, Number> values = new TreeMap<>();
+		for (Map.Entry<String, Supplier<Number>> entry : gauges.entrySet()) {
+			values.put(entry.getKey(), entry.getValue().get());
+		}
+		return values;
+	}
+}
@@ -0,0 +1,192 @@
+package Util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe, scalable Bloom filter of strings. mightContain never returns false for a string that was put, but
+ * may return true for one that was not, with probability close to the configured false-positive rate.
+ *
+ * The filter starts with one stage sized for expectedInsertions. When a stage is full a new stage is added with
+ * twice the capacity and half the false-positive rate. The first stage gets half the configured rate, so the
+ * compounded rate across all stages stays below the configured one however many strings are added (Almeida et al.,
+ * "Scalable Bloom Filters"). Bits are set with lock-free CAS; only adding a stage takes a lock.
+ */
+public class ScalableBloomFilter {
+	private static final int GROWTH_FACTOR = 2;
+	private static final double TIGHTENING_RATIO = 0.5;
+
+	private final List<Stage> stages = new CopyOnWriteArrayList<>();
+	private final AtomicLong size = new AtomicLong();
+
+	/**
+	 * @param expectedInsertions capacity of the first stage
+	 * @param falsePositiveRate  target overall false-positive rate, eg 0.01
+	 */
+	public ScalableBloomFilter(long expectedInsertions, double falsePositiveRate) {
+		if (expectedInsertions < 1) {
+			throw new IllegalArgumentException("expectedInsertions must be at least 1");
+		}
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+		}
+		stages.add(new Stage(expectedInsertions, falsePositiveRate * (1 - TIGHTENING_RATIO)));
+	}
+
+	/**
+	 * Adds a string to the filter.
+	 *
+	 * @param value the string to add
+	 */
+	public void put(String value) {
+		long hash = hash(value);
+		Stage stage = stages.get(stages.size() - 1);
+		if (stage.count.get() >= stage.capacity) {
+			stage = grow(stage);
+		}
+		stage.put(hash);
+		size.incrementAndGet();
+	}
+
+	/**
+	 * @param value the string to look for
+	 * @return false if value was definitely never put, true if it might have been
+	 */
+	public boolean mightContain(String value) {
+		long hash = hash(value);
+		for (Stage stage : stages) {
+			if (stage.mightContain(hash)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private synchronized Stage grow(Stage full) {
+		Stage last = stages.get(stages.size() - 1);
+		if (last != full) {
+			// another thread already added a stage
+			return last;
+		}
+		Stage next = new Stage(full.capacity * GROWTH_FACTOR, full.falsePositiveRate * TIGHTENING_RATIO);
+		stages.add(next);
+		return next;
+	}
+
+	/**
+	 * @return number of strings put into the filter
+	 */
+	public long size() {
+		return size.get();
+	}
+
+	/**
+	 * @return number of stages the filter has grown to
+	 */
+	public int stageCount() {
+		return stages.size();
+	}
+
+	/**
+	 * @return memory used by the bit arrays, in bytes
+	 */
+	public long memoryBytes() {
+		long bytes = 0;
+		for (Stage stage : stages) {
+			bytes += stage.bits.length() * (long) Long.BYTES;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @return the estimated probability that mightContain returns true for a string that was never put, given how
+	 *         full each stage currently is
+	 */
+	public double expectedFalsePositiveRate() {
+		double allMiss = 1.0;
+		for (Stage stage : stages) {
+			allMiss *= 1 - stage.currentFalsePositiveRate();
+		}
+		return 1 - allMiss;
+	}
+
+	/**
+	 * 64-bit FNV-1a over the string's chars followed by a murmur3 finalizer to spread the bits.
+	 */
+	private static long hash(String value) {
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h ^= value.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * One fixed-size Bloom filter. Probe positions are derived from the two halves of the 64-bit hash
+	 * (Kirsch-Mitzenmacher double hashing).
+	 */
+	private static class Stage {
+		final long capacity;
+		final double falsePositiveRate;
+		final long numBits;
+		final int numHashes;
+		final AtomicLongArray bits;
+		final AtomicLong count = new AtomicLong();
+
+		Stage(long capacity, double falsePositiveRate) {
+			this.capacity = capacity;
+			this.falsePositiveRate = falsePositiveRate;
+			long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+			int words = (int) Math.max(1, (optimalBits + 63) / 64);
+			this.numBits = words * 64L;
+			this.numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+			this.bits = new AtomicLongArray(words);
+		}
+
+		void put(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			for (int i = 1; i <= numHashes; i++) {
+				long index = Integer.toUnsignedLong(h1 + i * h2) % numBits;
+				setBit(index);
+			}
+			count.incrementAndGet();
+		}
+
+		boolean mightContain(long hash) {
+			int h1 = (int) hash;
+			int h2 = (int) (hash >>> 32);
+			for (int i = 1; i <= numHashes; i++) {
+				long index = Integer.toUnsignedLong(h1 + i * h2) % numBits;
+				if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void setBit(long index) {
+			int word = (int) (index >>> 6);
+			long mask = 1L << index;
+			long current;
+			do {
+				current = bits.get(word);
+				if ((current & mask) != 0) {
+					return;
+				}
+			} while (!bits.compareAndSet(word, current, current | mask));
+		}
+
+		double currentFalsePositiveRate() {
+			return Math.pow(1 - Math.exp(-(double) numHashes * count.get() / numBits), numHashes);
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.tools.RunScript;
+
+/**
+ * The SchemaMigrator class brings the database schema up to date by applying versioned scripts from
+ * db/migration on the classpath. Each script is named V{version}__{description}.sql and is applied at most once;
+ * the versions already applied are recorded in the schema_version table.
+ *
+ * To change the schema, add a new script with the next version number to MIGRATIONS. Never edit a script that
+ * has already been released.
+ *
+ * H2 commits every DDL statement as soon as it runs, so a script cannot be rolled back together with its
+ * schema_version row. Scripts must therefore be safe to run again (create ... if not exists, drop ... if exists):
+ * a migration that fails part way, or whose row is never recorded, is simply applied again on the next start.
+ */
+public class SchemaMigrator {
+
+	/**
+	 * Migration scripts in the order they must be applied
+	 */
+	private static final String[] MIGRATIONS = {
+			"V1__baseline.sql",
+			"V2__message_posted_by_time_index.sql",
+			"V3__message_time_index.sql",
+			"V4__message_time_id_index.sql",
+	};
+
+	private static final String MIGRATION_PATH = "db/migration/";
+
+	private SchemaMigrator() {
+	}
+
+	/**
+	 * Applies every migration newer than the version recorded in schema_version, in order, recording each one as soon
+	 * as its script has run. DDL in the script is committed by H2 as it runs, so only the schema_version row is
+	 * transactional.
+	 *
+	 * @param connection connection to migrate
+	 * @return the schema version after migrating
+	 * @throws SQLException if a migration fails; migrations before it stay applied, and the failed one stays
+	 *                      unrecorded, possibly with some of its statements applied
+	 */
+	public static int migrate(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		statement.execute("CREATE TABLE IF NOT EXISTS schema_version ("
+				+ "version int primary key, "
+				+ "script varchar(255), "
+				+ "applied_at timestamp default current_timestamp)");
+		statement.close();
+
+		int current = currentVersion(connection);
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			for (String script : MIGRATIONS) {
+				int version = versionOf(script);
+				if (version <= current) {
+					continue;
+				}
+				apply(connection, script);
+				PreparedStatement record = connection
+						.prepareStatement("INSERT INTO schema_version (version, script) VALUES (?, ?)");
+				record.setInt(1, version);
+				record.setString(2, script);
+				record.executeUpdate();
+				connection.commit();
+				current = version;
+			}
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+		return current;
+	}
+
+	/**
+	 * @param connection connection to inspect
+	 * @return the highest applied migration version, or 0 if none have been applied
+	 * @throws SQLException if schema_version cannot be read
+	 */
+	public static int currentVersion(Connection connection) throws SQLException {
+		Statement statement = connection.createStatement();
+		ResultSet rs = statement.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version");
+		rs.next();
+		int version = rs.getInt(1);
+		statement.close();
+		return version;
+	}
+
+	private static void apply(Connection connection, String script) throws SQLException {
+		InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + script);
+		if (in == null) {
+			throw new SQLException("Migration script not found on classpath: " + MIGRATION_PATH + script);
+		}
+		try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+			RunScript.execute(connection, reader);
+		} catch (IOException e) {
+			throw new SQLException("Could not read migration script " + script, e);
+		}
+	}
+
+	private static int versionOf(String script) {
+		return Integer.parseInt(script.substring(1, script.indexOf("__")));
+	}
+}
@@ -0,0 +1,108 @@
+package Util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the load and every caller that arrives while it
+ * is in flight waits for it and gets the same result, so a burst of misses for one hot key costs one query.
+ *
+ * Each load is tagged with a stamp, normally the cache stamp taken before loading. A caller only joins a load in
+ * flight with the same stamp; if the key was written since that load started, the caller runs its own load rather
+ * than take a result that may predate the write, and its load takes the old one's place, so the burst of misses
+ * that follows a write is coalesced too. The old load still finishes for the callers already waiting on it.
+ *
+ * Metrics registered under the given name: loads, the loads actually run; coalesced, the callers that waited for
+ * another caller's load instead; and inFlight.
+ */
+public class SingleFlight<K, V> {
+	private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * @param name metrics prefix, eg "messages.cache.singleFlight"
+	 */
+	public SingleFlight(String name) {
+		Metrics.register(name + ".loads", loads::sum);
+		Metrics.register(name + ".coalesced", coalesced::sum);
+		Metrics.register(name + ".inFlight", flights::size);
+	}
+
+	/**
+	 * Runs the loader, or waits for a load of the same key and stamp that is already running.
+	 *
+	 * @param key    the key being loaded
+	 * @param stamp  identifies the state of the key the load starts from
+	 * @param loader loads the value
+	 * @return the loaded value
+	 */
+	public V load(K key, long stamp, Supplier<V> loader) {
+		Flight<V> mine = new Flight<>(stamp);
+		Flight<V> current = flights.putIfAbsent(key, mine);
+		while (current != null) {
+			if (current.stamp == stamp) {
+				coalesced.increment();
+				return await(current);
+			}
+			// the key changed since that load started, so it may be stale for this caller: lead a new load in its
+			// place. If another caller got there first, look again at whatever is in flight now.
+			if (flights.replace(key, current, mine)) {
+				break;
+			}
+			current = flights.putIfAbsent(key, mine);
+		}
+		loads.increment();
+		try {
+			V value = loader.get();
+			mine.result.complete(value);
+			return value;
+		} catch (RuntimeException | Error e) {
+			mine.result.completeExceptionally(e);
+			throw e;
+		} finally {
+			flights.remove(key, mine);
+		}
+	}
+
+	private static <V> V await(Flight<V> flight) {
+		try {
+			return flight.result.join();
+		} catch (CompletionException e) {
+			// rethrow what the loader threw, as if this caller had run it
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * @return number of loads run
+	 */
+	public long getLoadCount() {
+		return loads.sum();
+	}
+
+	/**
+	 * @return number of callers that shared another caller's load
+	 */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	private static class Flight<V> {
+		final long stamp;
+		final CompletableFuture<V> result = new CompletableFuture<>();
+
+		Flight(long stamp) {
+			this.stamp = stamp;
+		}
+	}
+}
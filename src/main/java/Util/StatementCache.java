@@ -0,0 +1,95 @@
+package Util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, least-recently-used cache of prepared statements for a single physical connection, keyed by SQL
+ * text. A connection is only ever used by one borrower at a time, so the cache itself is not synchronized; the
+ * hit/miss/eviction counters are shared by every cache in the pool.
+ */
+class StatementCache {
+
+	/**
+	 * Key prefix separating statements prepared with RETURN_GENERATED_KEYS from plain ones with the same SQL
+	 */
+	private static final String GENERATED_KEYS_PREFIX = "\u0000keys:";
+
+	private final Connection physical;
+	private final LinkedHashMap<String, PreparedStatement> statements;
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+
+	/**
+	 * @param physical  the connection statements are prepared on
+	 * @param maxSize   maximum number of statements kept open
+	 * @param hits      counter incremented when a cached statement is reused
+	 * @param misses    counter incremented when a statement has to be prepared
+	 * @param evictions counter incremented when the least recently used statement is closed to make room
+	 */
+	StatementCache(Connection physical, int maxSize, LongAdder hits, LongAdder misses, LongAdder evictions) {
+		this.physical = physical;
+		this.hits = hits;
+		this.misses = misses;
+		this.evictions = evictions;
+		this.statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+				if (size() > maxSize) {
+					closeQuietly(eldest.getValue());
+					StatementCache.this.evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached statement for sql, preparing and caching it on a miss. Parameters and batches left over
+	 * from the previous use are cleared.
+	 *
+	 * @param sql               the statement text
+	 * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 * @return a prepared statement ready to have its parameters set
+	 * @throws SQLException if the statement could not be prepared
+	 */
+	PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+		String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? GENERATED_KEYS_PREFIX + sql : sql;
+		PreparedStatement statement = statements.get(key);
+		if (statement != null && !statement.isClosed()) {
+			hits.increment();
+			statement.clearParameters();
+			statement.clearBatch();
+			return statement;
+		}
+		misses.increment();
+		statement = physical.prepareStatement(sql, autoGeneratedKeys);
+		statements.put(key, statement);
+		return statement;
+	}
+
+	/**
+	 * Closes every cached statement. Called before the physical connection is closed.
+	 */
+	void clear() {
+		for (PreparedStatement statement : statements.values()) {
+			closeQuietly(statement);
+		}
+		statements.clear();
+	}
+
+	private static void closeQuietly(PreparedStatement statement) {
+		try {
+			statement.close();
+		} catch (SQLException e) {
+			// the statement is being discarded anyway
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Version counters for int keys, striped so that any number of keys fits in a fixed array. Writers bump the
+ * version of every key they change; readers use get(key) to tell whether a key may have changed since they last
+ * looked.
+ *
+ * Keys that share a stripe share a version, so a write to one key also changes the version of its neighbours. That
+ * only ever makes a reader think an unchanged key changed, never the reverse.
+ */
+public class StripedVersionCounter {
+	private final AtomicLongArray versions;
+	private final int mask;
+
+	/**
+	 * @param stripes number of counters, rounded up to a power of two
+	 */
+	public StripedVersionCounter(int stripes) {
+		int size = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+		this.versions = new AtomicLongArray(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * @param key the key
+	 * @return the current version of the key's stripe
+	 */
+	public long get(int key) {
+		return versions.get(stripeOf(key));
+	}
+
+	/**
+	 * Records that a key changed.
+	 *
+	 * @param key the key
+	 */
+	public void bump(int key) {
+		versions.incrementAndGet(stripeOf(key));
+	}
+
+	private int stripeOf(int key) {
+		int h = key * 0x9e3779b9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+}
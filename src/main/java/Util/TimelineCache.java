@@ -0,0 +1,420 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache of per-account timelines: the ids of an account's messages ordered by time posted, then by id. Each
+ * timeline is held in two primitive arrays (ids and times) so a cached account costs 12 bytes per message.
+ *
+ * Timelines are patched in place as messages are added and removed rather than rebuilt. The cache holds at most
+ * maxBytes of timelines; when it is over budget the least recently viewed accounts are evicted.
+ *
+ * Timelines live in a ConcurrentHashMap and each one is guarded by its own monitor, so reads and patches of
+ * different accounts never wait on each other, and a read only records the time it was made instead of reordering
+ * a shared list. Eviction is therefore approximately LRU: it samples a few timelines at a time, walking the map
+ * round robin, and evicts the one viewed longest ago.
+ *
+ * Callers that rebuild a timeline from the database should take a stamp(accountId) before loading and install the
+ * result with putIfUnchanged, so a rebuild that raced with a write to the same account is dropped instead of
+ * replacing the patched timeline with an out of date one.
+ */
+public class TimelineCache {
+	/**
+	 * Accounts share a stamp only when they share one of this many stripes, so a write to one account seldom drops
+	 * another account's rebuild
+	 */
+	private static final int STAMP_STRIPES = 8192;
+	/**
+	 * Timelines compared each time one is picked for eviction
+	 */
+	private static final int EVICTION_SAMPLE_SIZE = 8;
+	private static final int INITIAL_CAPACITY = 8;
+	/**
+	 * Rough per-account overhead: the map entry, the boxed key, the Timeline object and two array headers
+	 */
+	private static final long ACCOUNT_OVERHEAD_BYTES = 96;
+	private static final long BYTES_PER_MESSAGE = Integer.BYTES + Long.BYTES;
+
+	private final long maxBytes;
+	private final ConcurrentHashMap<Integer, Timeline> timelines = new ConcurrentHashMap<>();
+	/**
+	 * Bumped by every write to an account
+	 */
+	private final StripedVersionCounter stamps = new StripedVersionCounter(STAMP_STRIPES);
+	/**
+	 * Sum of bytes() over the timelines in the map. Changed only while holding the monitor of the timeline being
+	 * counted, so it never drifts from a timeline growing while it is dropped.
+	 */
+	private final AtomicLong memoryBytes = new AtomicLong();
+	/**
+	 * Held while evicting, and guards evictionHand
+	 */
+	private final ReentrantLock evictionLock = new ReentrantLock();
+	/**
+	 * Where the last eviction stopped sampling, so successive evictions look at different timelines
+	 */
+	private Iterator<Map.Entry<Integer, Timeline>> evictionHand;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder rebuilds = new LongAdder();
+	private final LongAdder staleRebuildsDropped = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxBytes memory budget for all cached timelines
+	 */
+	public TimelineCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @param accountId the account to look up
+	 * @return a copy of the account's message ids, oldest first, or null if the account is not cached
+	 */
+	public int[] get(int accountId) {
+		Timeline timeline = view(accountId);
+		if (timeline == null) {
+			return null;
+		}
+		synchronized (timeline) {
+			return Arrays.copyOf(timeline.ids, timeline.size);
+		}
+	}
+
+	/**
+	 * Cuts one page out of an account's timeline without copying the rest of it.
+	 *
+	 * @param accountId the account to look up
+	 * @param afterTime time posted of the last message already seen
+	 * @param afterId   id of the last message already seen; with afterTime, Long.MIN_VALUE and Integer.MIN_VALUE for
+	 *                  the first page
+	 * @param count     most entries to return
+	 * @return up to count entries that come after (afterTime, afterId), oldest first, or null if the account is not
+	 *         cached
+	 */
+	public Slice page(int accountId, long afterTime, int afterId, int count) {
+		Timeline timeline = view(accountId);
+		if (timeline == null) {
+			return null;
+		}
+		synchronized (timeline) {
+			int from = timeline.search(afterId, afterTime);
+			from = from >= 0 ? from + 1 : -from - 1;
+			int to = (int) Math.min(timeline.size, (long) from + count);
+			return new Slice(Arrays.copyOfRange(timeline.ids, from, to), Arrays.copyOfRange(timeline.times, from, to));
+		}
+	}
+
+	/**
+	 * @param accountId the account about to be rebuilt
+	 * @return a stamp to pass to putIfUnchanged once the rebuild finishes
+	 */
+	public long stamp(int accountId) {
+		return stamps.get(accountId);
+	}
+
+	/**
+	 * Installs a timeline loaded from the database unless the account was written to since the stamp was taken.
+	 *
+	 * @param accountId the account
+	 * @param ids       message ids, ordered by time then id
+	 * @param times     time posted of each message in ids
+	 * @param stamp     the stamp taken before loading
+	 * @return true if the timeline was installed
+	 */
+	public boolean putIfUnchanged(int accountId, int[] ids, long[] times, long stamp) {
+		if (stamps.get(accountId) != stamp) {
+			staleRebuildsDropped.increment();
+			return false;
+		}
+		Timeline timeline = new Timeline(ids, times, ids.length);
+		memoryBytes.addAndGet(timeline.bytes());
+		retire(timelines.put(accountId, timeline));
+		// a write that bumped the stamp after the check above may have found no timeline to patch
+		if (stamps.get(accountId) != stamp) {
+			if (timelines.remove(accountId, timeline)) {
+				retire(timeline);
+			}
+			staleRebuildsDropped.increment();
+			return false;
+		}
+		rebuilds.increment();
+		evictToBudget();
+		return timelines.get(accountId) == timeline;
+	}
+
+	/**
+	 * Adds a new message to its account's timeline if the account is cached.
+	 *
+	 * @param accountId the account that posted the message
+	 * @param messageId the message id
+	 * @param time      the message's time posted
+	 */
+	public void add(int accountId, int messageId, long time) {
+		stamps.bump(accountId);
+		Timeline timeline = timelines.get(accountId);
+		if (timeline == null) {
+			return;
+		}
+		synchronized (timeline) {
+			if (timeline.retired) {
+				return;
+			}
+			long before = timeline.bytes();
+			timeline.insert(messageId, time);
+			memoryBytes.addAndGet(timeline.bytes() - before);
+		}
+		evictToBudget();
+	}
+
+	/**
+	 * Removes a deleted message from its account's timeline if the account is cached.
+	 *
+	 * @param accountId the account that posted the message
+	 * @param messageId the message id
+	 * @param time      the message's time posted
+	 */
+	public void remove(int accountId, int messageId, long time) {
+		stamps.bump(accountId);
+		Timeline timeline = timelines.get(accountId);
+		if (timeline != null) {
+			synchronized (timeline) {
+				timeline.remove(messageId, time);
+			}
+		}
+	}
+
+	/**
+	 * Drops an account's timeline so the next read rebuilds it.
+	 *
+	 * @param accountId the account
+	 */
+	public void invalidate(int accountId) {
+		stamps.bump(accountId);
+		retire(timelines.remove(accountId));
+	}
+
+	private Timeline view(int accountId) {
+		Timeline timeline = timelines.get(accountId);
+		if (timeline == null) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		timeline.lastViewed = System.nanoTime();
+		return timeline;
+	}
+
+	/**
+	 * Uncounts a timeline that has just been taken out of the map. Safe to call with null.
+	 */
+	private void retire(Timeline timeline) {
+		if (timeline == null) {
+			return;
+		}
+		synchronized (timeline) {
+			if (!timeline.retired) {
+				timeline.retired = true;
+				memoryBytes.addAndGet(-timeline.bytes());
+			}
+		}
+	}
+
+	private void evictToBudget() {
+		if (memoryBytes.get() <= maxBytes) {
+			return;
+		}
+		evictionLock.lock();
+		try {
+			while (memoryBytes.get() > maxBytes) {
+				Map.Entry<Integer, Timeline> coldest = null;
+				for (int i = 0; i < EVICTION_SAMPLE_SIZE; i++) {
+					if (evictionHand == null || !evictionHand.hasNext()) {
+						evictionHand = timelines.entrySet().iterator();
+						if (!evictionHand.hasNext()) {
+							// what is over budget is a timeline not yet in the map; its writer evicts after adding it
+							return;
+						}
+					}
+					Map.Entry<Integer, Timeline> candidate = evictionHand.next();
+					if (coldest == null || candidate.getValue().lastViewed < coldest.getValue().lastViewed) {
+						coldest = candidate;
+					}
+				}
+				if (timelines.remove(coldest.getKey(), coldest.getValue())) {
+					retire(coldest.getValue());
+					evictions.increment();
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of reads answered from the cache
+	 */
+	public long hitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of reads that found the account not cached
+	 */
+	public long missCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return fraction of reads answered from the cache
+	 */
+	public double hitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 1.0 : (double) hitCount / total;
+	}
+
+	/**
+	 * @return number of timelines installed from the database
+	 */
+	public long rebuildCount() {
+		return rebuilds.sum();
+	}
+
+	/**
+	 * @return number of rebuilt timelines dropped because their account was written to during the rebuild
+	 */
+	public long staleRebuildsDroppedCount() {
+		return staleRebuildsDropped.sum();
+	}
+
+	/**
+	 * @return number of accounts evicted to stay within the memory budget
+	 */
+	public long evictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return number of accounts currently cached
+	 */
+	public int size() {
+		return timelines.size();
+	}
+
+	/**
+	 * @return estimated memory used by cached timelines, in bytes
+	 */
+	public long memoryBytes() {
+		return memoryBytes.get();
+	}
+
+	/**
+	 * @return the memory budget, in bytes
+	 */
+	public long maxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Consecutive entries cut from one account's timeline, sorted by (time, id)
+	 */
+	public static class Slice {
+		/**
+		 * Message ids
+		 */
+		public final int[] ids;
+		/**
+		 * Time posted of each message in ids
+		 */
+		public final long[] times;
+
+		Slice(int[] ids, long[] times) {
+			this.ids = ids;
+			this.times = times;
+		}
+	}
+
+	/**
+	 * One account's timeline. ids[0..size) and times[0..size) are sorted by (time, id). Everything but lastViewed is
+	 * read and written only while holding the timeline's monitor.
+	 */
+	private static class Timeline {
+		int[] ids;
+		long[] times;
+		int size;
+		/**
+		 * Set once the timeline has left the map and its bytes are no longer counted
+		 */
+		boolean retired;
+		/**
+		 * System.nanoTime() of the last read, or of the rebuild that created it
+		 */
+		volatile long lastViewed = System.nanoTime();
+
+		Timeline(int[] ids, long[] times, int size) {
+			this.ids = ids;
+			this.times = times;
+			this.size = size;
+		}
+
+		void insert(int id, long time) {
+			int index = search(id, time);
+			if (index >= 0) {
+				return;
+			}
+			index = -index - 1;
+			if (size == ids.length) {
+				int capacity = Math.max(INITIAL_CAPACITY, ids.length * 2);
+				ids = Arrays.copyOf(ids, capacity);
+				times = Arrays.copyOf(times, capacity);
+			}
+			System.arraycopy(ids, index, ids, index + 1, size - index);
+			System.arraycopy(times, index, times, index + 1, size - index);
+			ids[index] = id;
+			times[index] = time;
+			size++;
+		}
+
+		void remove(int id, long time) {
+			int index = search(id, time);
+			if (index < 0) {
+				return;
+			}
+			System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+			System.arraycopy(times, index + 1, times, index, size - index - 1);
+			size--;
+		}
+
+		/**
+		 * @return the index of (time, id), or (-(insertion point) - 1) if absent, as Arrays.binarySearch does
+		 */
+		int search(int id, long time) {
+			int low = 0;
+			int high = size - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = times[mid] != time ? Long.compare(times[mid], time) : Integer.compare(ids[mid], id);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+
+		long bytes() {
+			return ACCOUNT_OVERHEAD_BYTES + ids.length * BYTES_PER_MESSAGE;
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package Util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A token bucket per int key, eg per account, kept in a fixed-size lock-free open-addressed table. Each key refills at
+ * permitsPerSecond up to burst tokens, and tryAcquire takes one token or refuses.
+ *
+ * A bucket is stored as the single time at which it will next be full (the generic cell rate algorithm), so taking a
+ * token is one compare-and-set on a long and a bucket needs no refill bookkeeping. A bucket whose time has passed is
+ * full, which means its account is idle and its slot can be taken over by another key without any reset; that is
+ * how the table stays a fixed size however many keys pass through it. Keys are probed for in a short window of slots
+ * after their hash. If every slot in the window belongs to a busy bucket the request is let through rather than
+ * refused, and counted as untracked.
+ *
+ * Two threads that first see the same key at the same time may claim separate slots for it, and a thread can spend a
+ * token from a slot that was just handed to another key. Both only ever make the limit slightly more lenient.
+ */
+public class TokenBucketLimiter {
+	private static final int EMPTY = Integer.MIN_VALUE;
+	private static final int PROBES = 8;
+
+	private final long intervalNanos;
+	private final long burstNanos;
+	private final int mask;
+	private final long origin = System.nanoTime();
+	private final AtomicIntegerArray keys;
+	private final AtomicLongArray fullAt;
+
+	private final LongAdder allowed = new LongAdder();
+	private final LongAdder limited = new LongAdder();
+	private final LongAdder untracked = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param permitsPerSecond rate each bucket refills at
+	 * @param burst            tokens a full bucket holds
+	 * @param slots            buckets kept at once, rounded up to a power of two
+	 */
+	public TokenBucketLimiter(double permitsPerSecond, int burst, int slots) {
+		if (permitsPerSecond <= 0 || burst < 1 || slots < 1) {
+			throw new IllegalArgumentException("permitsPerSecond, burst and slots must be positive");
+		}
+		this.intervalNanos = Math.max(1, (long) (1e9 / permitsPerSecond));
+		this.burstNanos = intervalNanos * burst;
+		int size = Integer.highestOneBit(Math.max(PROBES, slots - 1) << 1);
+		this.mask = size - 1;
+		this.keys = new AtomicIntegerArray(size);
+		for (int i = 0; i < size; i++) {
+			keys.set(i, EMPTY);
+		}
+		this.fullAt = new AtomicLongArray(size);
+	}
+
+	/**
+	 * Registers the limiter's metrics: allowed, limited, untracked and evictions.
+	 *
+	 * @param name metrics prefix, eg "messages.rateLimit"
+	 * @return this limiter
+	 */
+	public TokenBucketLimiter registerMetrics(String name) {
+		Metrics.register(name + ".allowed", allowed::sum);
+		Metrics.register(name + ".limited", limited::sum);
+		Metrics.register(name + ".untracked", untracked::sum);
+		Metrics.register(name + ".evictions", evictions::sum);
+		return this;
+	}
+
+	/**
+	 * @param key the key whose bucket to take a token from
+	 * @return true if a token was taken, false if the key is over its rate
+	 */
+	public boolean tryAcquire(int key) {
+		long now = System.nanoTime() - origin;
+		int slot = key == EMPTY ? -1 : findSlot(key, now);
+		if (slot < 0) {
+			untracked.increment();
+			allowed.increment();
+			return true;
+		}
+		while (true) {
+			long full = fullAt.get(slot);
+			// the bucket holds (burst - (full - now) / interval) tokens; taking one moves full on by one interval
+			long next = Math.max(full, now) + intervalNanos;
+			if (next - now > burstNanos) {
+				limited.increment();
+				return false;
+			}
+			if (fullAt.compareAndSet(slot, full, next)) {
+				allowed.increment();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @param key the key
+	 * @return whole tokens left in the key's bucket
+	 */
+	public int availableTokens(int key) {
+		long now = System.nanoTime() - origin;
+		int start = spread(key) & mask;
+		for (int i = 0; i < PROBES; i++) {
+			int slot = (start + i) & mask;
+			if (keys.get(slot) == key) {
+				return (int) ((burstNanos - Math.max(0, fullAt.get(slot) - now)) / intervalNanos);
+			}
+		}
+		return (int) (burstNanos / intervalNanos);
+	}
+
+	private int findSlot(int key, long now) {
+		int start = spread(key) & mask;
+		while (true) {
+			int claimable = -1;
+			int claimableKey = EMPTY;
+			for (int i = 0; i < PROBES; i++) {
+				int slot = (start + i) & mask;
+				int current = keys.get(slot);
+				if (current == key) {
+					return slot;
+				}
+				// an empty slot is preferred over a full bucket, which still belongs to an account
+				if (current == EMPTY) {
+					if (claimable < 0 || claimableKey != EMPTY) {
+						claimable = slot;
+						claimableKey = EMPTY;
+					}
+				} else if (claimable < 0 && fullAt.get(slot) <= now) {
+					claimable = slot;
+					claimableKey = current;
+				}
+			}
+			if (claimable < 0) {
+				return -1;
+			}
+			if (keys.compareAndSet(claimable, claimableKey, key)) {
+				if (claimableKey != EMPTY) {
+					evictions.increment();
+				}
+				return claimable;
+			}
+		}
+	}
+
+	private static int spread(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return number of tokens taken
+	 */
+	public long getAllowedCount() {
+		return allowed.sum();
+	}
+
+	/**
+	 * @return number of requests refused for being over the rate
+	 */
+	public long getLimitedCount() {
+		return limited.sum();
+	}
+
+	/**
+	 * @return number of requests let through because no slot was free for their key
+	 */
+	public long getUntrackedCount() {
+		return untracked.sum();
+	}
+
+	/**
+	 * @return number of idle buckets whose slot was given to another key
+	 */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+
+	/**
+	 * @return number of buckets the table can hold
+	 */
+	public int capacity() {
+		return mask + 1;
+	}
+}
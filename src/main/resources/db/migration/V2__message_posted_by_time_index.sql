@@ -0,0 +1,2 @@
+-- Serves an account's messages in time order without sorting them.
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch);
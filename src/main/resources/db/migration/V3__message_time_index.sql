@@ -0,0 +1,2 @@
+-- Serves time-ordered and time-range reads across all messages.
+create index if not exists message_time_idx on message (time_posted_epoch);
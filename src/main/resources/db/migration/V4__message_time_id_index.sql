@@ -0,0 +1,3 @@
+-- Time-ordered reads break ties on message_id; with message_id in the key they walk the index instead of sorting.
+create index if not exists message_time_id_idx on message (time_posted_epoch, message_id);
+drop index if exists message_time_idx;
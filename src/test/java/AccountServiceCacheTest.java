@@ -0,0 +1,120 @@
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import DAO.DataAccessException;
+import Model.Account;
+import Service.AccountService;
+import Util.Metrics;
+
+public class AccountServiceCacheTest {
+    AccountDAO accountDAO;
+    AccountService accountService;
+
+    /**
+     * Before every test, create an AccountService over a mock AccountDAO so database round trips can be counted.
+     */
+    @Before
+    public void setUp() {
+        accountDAO = mock(AccountDAO.class);
+        accountService = new AccountService(accountDAO);
+    }
+
+    /**
+     * Repeated lookups of the same account id should reach the DAO once and be reported as cache hits.
+     */
+    @Test
+    public void getAccountByIdIsCached() {
+        Account account = new Account(1, "testuser1", "password");
+        when(accountDAO.getAccountById(1)).thenReturn(account);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(account, accountService.getAccountById(1));
+        }
+        verify(accountDAO, times(1)).getAccountById(1);
+
+        Map<String, Number> metrics = Metrics.snapshot();
+        Assert.assertEquals(4, metrics.get("accounts.cache.hits").intValue());
+        Assert.assertEquals(1, metrics.get("accounts.cache.misses").intValue());
+    }
+
+    /**
+     * A lookup of a missing account is cached as missing until an account with that id is created.
+     */
+    @Test
+    public void createAccountInvalidatesMissingEntry() {
+        Account created = new Account(2, "newuser", "password");
+        when(accountDAO.getAccountById(2)).thenReturn(null);
+        when(accountDAO.createAccount(new Account("newuser", "password"))).thenReturn(created);
+
+        Assert.assertNull(accountService.getAccountById(2));
+        Assert.assertNull(accountService.getAccountById(2));
+        verify(accountDAO, times(1)).getAccountById(2);
+
+        when(accountDAO.getAccountById(2)).thenReturn(created);
+        accountService.createAccount(new Account("newuser", "password"));
+        Assert.assertEquals(created, accountService.getAccountById(2));
+        verify(accountDAO, times(2)).getAccountById(2);
+    }
+
+    /**
+     * A lookup that raced with the account being created must not leave the account cached as missing.
+     */
+    @Test
+    public void loadRacingWithCreateIsNotCached() {
+        Account created = new Account(3, "raceuser", "password");
+        when(accountDAO.createAccount(new Account("raceuser", "password"))).thenReturn(created);
+        when(accountDAO.getAccountById(3)).thenAnswer(invocation -> {
+            // the account is created after this lookup read the table but before the lookup finished
+            accountService.createAccount(new Account("raceuser", "password"));
+            return null;
+        }).thenReturn(created);
+
+        Assert.assertNull(accountService.getAccountById(3));
+        Assert.assertEquals(created, accountService.getAccountById(3));
+        verify(accountDAO, times(2)).getAccountById(3);
+    }
+
+    /**
+     * A lookup whose query failed must not leave the account cached as missing.
+     */
+    @Test
+    public void failedLookupIsNotCached() {
+        Account account = new Account(4, "flakyuser", "password");
+        when(accountDAO.getAccountById(4))
+                .thenThrow(new DataAccessException(new SQLException("connection reset")))
+                .thenReturn(account);
+
+        Assert.assertThrows(DataAccessException.class, () -> accountService.getAccountById(4));
+        Assert.assertEquals(account, accountService.getAccountById(4));
+        Assert.assertEquals(account, accountService.getAccountById(4));
+        verify(accountDAO, times(2)).getAccountById(4);
+    }
+
+    /**
+     * A batch lookup whose query failed must not leave its ids cached as missing either.
+     */
+    @Test
+    public void failedBatchLookupIsNotCached() {
+        Account account = new Account(5, "batchuser", "password");
+        when(accountDAO.getAccountsByIds(new int[] {5}))
+                .thenReturn(null)
+                .thenReturn(Collections.singletonList(account));
+
+        Assert.assertTrue(accountService.getAccountsByIds(new int[] {5}).isEmpty());
+        Assert.assertEquals(Arrays.asList(account), accountService.getAccountsByIds(new int[] {5}));
+        Assert.assertEquals(account, accountService.getAccountById(5));
+        verify(accountDAO, times(2)).getAccountsByIds(new int[] {5});
+    }
+}
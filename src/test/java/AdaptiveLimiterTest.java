@@ -0,0 +1,68 @@
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.AdaptiveLimiter;
+
+public class AdaptiveLimiterTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+
+    /**
+     * Once the limit is reached, further requests should be refused immediately and counted as shed.
+     */
+    @Test
+    public void requestsOverTheLimitAreShed() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 1, 10);
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertTrue(limiter.tryAcquire());
+        Assert.assertFalse(limiter.tryAcquire());
+        Assert.assertEquals(1, limiter.getShedCount());
+
+        limiter.release(FAST);
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    /**
+     * With the limit fully used and latency steady, the limit should grow; when latency then rises well above its
+     * long-term average, the limit should shrink.
+     */
+    @Test
+    public void limitFollowsLatency() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 2, 100);
+        for (int i = 0; i < 200; i++) {
+            saturate(limiter, FAST);
+        }
+        int grown = limiter.getLimit();
+        Assert.assertTrue("limit should grow, was " + grown, grown > 10);
+
+        for (int i = 0; i < 50; i++) {
+            saturate(limiter, SLOW);
+        }
+        Assert.assertTrue("limit should shrink, was " + limiter.getLimit(), limiter.getLimit() < grown / 2);
+    }
+
+    /**
+     * A limiter that is mostly idle should not raise its limit, however fast requests are.
+     */
+    @Test
+    public void idleLimiterDoesNotGrow() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(10, 2, 100);
+        for (int i = 0; i < 500; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+            limiter.release(FAST);
+        }
+        Assert.assertEquals(10, limiter.getLimit());
+    }
+
+    private static void saturate(AdaptiveLimiter limiter, long rttNanos) {
+        int acquired = 0;
+        while (limiter.tryAcquire()) {
+            acquired++;
+        }
+        for (int i = 0; i < acquired; i++) {
+            limiter.release(rttNanos);
+        }
+    }
+}
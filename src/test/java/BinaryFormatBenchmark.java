@@ -0,0 +1,74 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import Controller.JsonCodec;
+import Controller.JsonCodec.Format;
+import Model.Message;
+
+/**
+ * Compares JSON with the binary formats Smile and CBOR on a page of 100 messages, the shape of a bulk GET /messages:
+ * the encoded size of the page, and the time to encode it and to decode it again with JsonCodec, over 10k pages.
+ * This is not run by surefire; run it with
+ *
+ *  mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *  java -cp target/classes:target/test-classes:$(cat cp.txt) BinaryFormatBenchmark
+ */
+public class BinaryFormatBenchmark {
+    private static final int PAGES = 10_000;
+    private static final int PAGE_SIZE = 100;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        List<Message> page = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            page.add(new Message(1_000_000 + i, 1 + i % 50, "benchmark message text number " + i, 1669947792L + i));
+        }
+
+        for (Format format : Format.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+            JsonCodec.write(out, page, format);
+            byte[] encoded = out.toByteArray();
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                encode(page, format, out);
+                decode(encoded, format);
+            }
+            long encodeNanos = 0;
+            long decodeNanos = 0;
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                long start = System.nanoTime();
+                encode(page, format, out);
+                encodeNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                decode(encoded, format);
+                decodeNanos += System.nanoTime() - start;
+            }
+            System.out.printf("%-6s %6d bytes per page  encode %8.2f ms  decode %8.2f ms per %d pages%n",
+                    format, encoded.length, encodeNanos / 1_000_000.0 / MEASURED_ROUNDS,
+                    decodeNanos / 1_000_000.0 / MEASURED_ROUNDS, PAGES);
+        }
+    }
+
+    private static long encode(List<Message> page, Format format, ByteArrayOutputStream out) throws IOException {
+        long checksum = 0;
+        for (int i = 0; i < PAGES; i++) {
+            out.reset();
+            JsonCodec.write(out, page, format);
+            checksum += out.size();
+        }
+        return checksum;
+    }
+
+    private static long decode(byte[] encoded, Format format) throws IOException {
+        long checksum = 0;
+        for (int i = 0; i < PAGES; i++) {
+            checksum += JsonCodec.readMessages(new ByteArrayInputStream(encoded), format).length;
+        }
+        return checksum;
+    }
+}
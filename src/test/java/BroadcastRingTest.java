@@ -0,0 +1,61 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.BroadcastRing;
+
+public class BroadcastRingTest {
+    /**
+     * Events should be numbered from 1 and readable by sequence until the ring wraps over them.
+     */
+    @Test
+    public void keepsTheLatestEvents() {
+        BroadcastRing<String> ring = new BroadcastRing<>(4);
+        Assert.assertEquals(0, ring.head());
+        for (int i = 1; i <= 6; i++) {
+            Assert.assertEquals(i, ring.publish(seq -> "event " + seq));
+        }
+        Assert.assertEquals(6, ring.head());
+        Assert.assertEquals(3, ring.oldest());
+        Assert.assertNull(ring.get(2));
+        Assert.assertEquals("event 3", ring.get(3));
+        Assert.assertEquals("event 6", ring.get(6));
+        Assert.assertNull(ring.get(7));
+    }
+
+    /**
+     * Listeners should be called once per publish until they are removed.
+     */
+    @Test
+    public void notifiesListeners() {
+        BroadcastRing<String> ring = new BroadcastRing<>(4);
+        AtomicInteger calls = new AtomicInteger();
+        Runnable listener = calls::incrementAndGet;
+        ring.addListener(listener);
+        ring.publish(seq -> "a");
+        ring.publish(seq -> "b");
+        ring.removeListener(listener);
+        ring.publish(seq -> "c");
+        Assert.assertEquals(2, calls.get());
+    }
+
+    /**
+     * A waiter should complete when an event after its sequence is published, or with its own sequence on timeout.
+     */
+    @Test
+    public void awaitsLaterEvents() throws Exception {
+        BroadcastRing<String> ring = new BroadcastRing<>(4);
+        ring.publish(seq -> "a");
+        Assert.assertEquals(Long.valueOf(1), ring.awaitAfter(0, 1, TimeUnit.SECONDS).get());
+
+        CompletableFuture<Long> waiter = ring.awaitAfter(1, 10, TimeUnit.SECONDS);
+        Assert.assertFalse(waiter.isDone());
+        ring.publish(seq -> "b");
+        Assert.assertEquals(Long.valueOf(2), waiter.get(1, TimeUnit.SECONDS));
+
+        Assert.assertEquals(Long.valueOf(2), ring.awaitAfter(2, 50, TimeUnit.MILLISECONDS).get(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.Bulkhead;
+
+public class BulkheadTest {
+
+    /**
+     * With its one thread busy and its one queue slot taken, a bulkhead should reject further work straight away
+     * and report the queued task's wait once it runs.
+     */
+    @Test
+    public void fullBulkheadRejects() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test.bulkhead.full", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = bulkhead.submit(() -> {
+            release.await();
+            return "first";
+        });
+        CompletableFuture<String> queued = bulkhead.submit(() -> "second");
+
+        try {
+            bulkhead.submit(() -> "third");
+            Assert.fail("expected the full bulkhead to reject");
+        } catch (RejectedExecutionException e) {
+            Assert.assertEquals(1, bulkhead.getRejectedCount());
+        }
+
+        Thread.sleep(20);
+        release.countDown();
+        Assert.assertEquals("first", running.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("second", queued.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(bulkhead.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        Assert.assertEquals(0, bulkhead.getQueueDepth());
+    }
+
+    /**
+     * Given a thread per task, as with virtual threads, a bulkhead should still run only its number of threads tasks
+     * at once, count the rest as queued and reject beyond its queue size.
+     */
+    @Test
+    public void threadPerTaskBulkheadIsBoundedBySemaphore() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test.bulkhead.perTask", 1, 1, runnable -> new Thread(runnable).start());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = bulkhead.submit(() -> {
+            started.countDown();
+            release.await();
+            return "first";
+        });
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = bulkhead.submit(() -> "second");
+
+        try {
+            bulkhead.submit(() -> "third");
+            Assert.fail("expected the full bulkhead to reject");
+        } catch (RejectedExecutionException e) {
+            Assert.assertEquals(1, bulkhead.getRejectedCount());
+        }
+        Assert.assertTrue(bulkhead.isThreadPerTask());
+        Assert.assertEquals(1, bulkhead.getActiveCount());
+        Assert.assertEquals(1, bulkhead.getQueueDepth());
+        Assert.assertFalse(queued.isDone());
+
+        release.countDown();
+        Assert.assertEquals("first", running.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals("second", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A task that throws should complete its future with the exception itself, not a wrapper.
+     */
+    @Test
+    public void failuresCompleteTheFuture() throws Exception {
+        Bulkhead bulkhead = new Bulkhead("test.bulkhead.failure", 1, 1);
+        CompletableFuture<Object> future = bulkhead.submit(() -> {
+            throw new IllegalStateException("boom");
+        });
+        try {
+            future.join();
+            Assert.fail("expected the task's exception");
+        } catch (Exception e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 again with If-None-Match set to the ETag of the first response
+     *
+     * Expected Response:
+     *  Status Code: 304
+     *  Response Body: empty
+     */
+    @Test
+    public void getMessageByIdNotModified() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages/1", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        Assert.assertNotNull(etag);
+
+        HttpResponse<String> second = get("/messages/1", etag);
+        Assert.assertEquals(304, second.statusCode());
+        Assert.assertEquals("", second.body());
+        Assert.assertEquals(etag, second.headers().firstValue("ETag").orElse(null));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/1 with the ETag from before the message was updated
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the updated message, with a new ETag
+     */
+    @Test
+    public void getMessageByIdModifiedAfterUpdate() throws IOException, InterruptedException {
+        String etag = get("/messages/1", null).headers().firstValue("ETag").orElse(null);
+
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"updated message\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(patch, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        HttpResponse<String> response = get("/messages/1", etag);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertNotEquals(etag, response.headers().firstValue("ETag").orElse(null));
+        Message expectedResult = new Message(1, 1, "updated message", 1669947792);
+        Assert.assertEquals(expectedResult, objectMapper.readValue(response.body(), Message.class));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages and GET localhost:8080/accounts/1/messages with matching ETags, then again
+     * after a new message is posted
+     *
+     * Expected Response:
+     *  Status Code: 304 before the post, 200 after it
+     */
+    @Test
+    public void getAllMessagesRevalidatesAfterCreate() throws IOException, InterruptedException {
+        String etag = get("/messages", null).headers().firstValue("ETag").orElse(null);
+        String accountEtag = get("/accounts/1/messages", null).headers().firstValue("ETag").orElse(null);
+        Assert.assertEquals(304, get("/messages", etag).statusCode());
+        Assert.assertEquals(304, get("/accounts/1/messages", accountEtag).statusCode());
+        Assert.assertEquals(304, get("/messages", "\"other\", W/" + etag).statusCode());
+
+        HttpRequest post = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, \"message_text\": \"hello message\", "
+                        + "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(post, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        Assert.assertEquals(200, get("/messages", etag).statusCode());
+        Assert.assertEquals(200, get("/accounts/1/messages", accountEtag).statusCode());
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) {
+            builder.header("If-None-Match", ifNoneMatch);
+        }
+        return webClient.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
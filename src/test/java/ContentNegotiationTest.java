@@ -0,0 +1,116 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import Controller.SocialMediaController;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ContentNegotiationTest {
+    private static final String SMILE = "application/x-jackson-smile";
+    private static final String CBOR = "application/cbor";
+
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper smileMapper;
+    ObjectMapper cborMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMappers
+     * for the binary formats.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        smileMapper = new ObjectMapper(new SmileFactory());
+        cborMapper = new ObjectMapper(new CBORFactory());
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Registering with a CBOR body and posting a message with a Smile body, each asking for the same format back
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the created account and message, in the requested format
+     */
+    @Test
+    public void binaryRequestAndResponseBodies() throws IOException, InterruptedException {
+        HttpResponse<byte[]> registered = send("/register", "POST",
+                cborMapper.writeValueAsBytes(new Account("binaryuser", "password")), CBOR, CBOR);
+        Assert.assertEquals(200, registered.statusCode());
+        Assert.assertEquals(CBOR, registered.headers().firstValue("Content-Type").orElse(null));
+        Assert.assertEquals(new Account(2, "binaryuser", "password"),
+                cborMapper.readValue(registered.body(), Account.class));
+
+        HttpResponse<byte[]> posted = send("/messages", "POST",
+                smileMapper.writeValueAsBytes(new Message(2, "binary message", 1669947792)), SMILE, SMILE);
+        Assert.assertEquals(200, posted.statusCode());
+        Assert.assertEquals(new Message(2, 2, "binary message", 1669947792),
+                smileMapper.readValue(posted.body(), Message.class));
+    }
+
+    /**
+     * Sending GET localhost:8080/messages and GET localhost:8080/messages/1 with Accept set to Smile
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the messages as Smile, with an ETag different from the JSON representation's
+     */
+    @Test
+    public void binaryMessageReads() throws IOException, InterruptedException {
+        Message expected = new Message(1, 1, "test message 1", 1669947792);
+
+        HttpResponse<byte[]> page = send("/messages", "GET", null, null, SMILE);
+        Assert.assertEquals(200, page.statusCode());
+        Assert.assertEquals(List.of(expected), smileMapper.readValue(page.body(), new TypeReference<List<Message>>(){}));
+
+        HttpResponse<byte[]> single = send("/messages/1", "GET", null, null, SMILE);
+        Assert.assertEquals(expected, smileMapper.readValue(single.body(), Message.class));
+        Assert.assertEquals("Accept", single.headers().firstValue("Vary").orElse(null));
+
+        String smileEtag = single.headers().firstValue("ETag").orElse(null);
+        String jsonEtag = send("/messages/1", "GET", null, null, null).headers().firstValue("ETag").orElse(null);
+        Assert.assertNotEquals(jsonEtag, smileEtag);
+    }
+
+    private HttpResponse<byte[]> send(String path, String method, byte[] body, String contentType, String accept)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body != null ? HttpRequest.BodyPublishers.ofByteArray(body)
+                        : HttpRequest.BodyPublishers.noBody());
+        if (contentType != null) {
+            request.header("Content-Type", contentType);
+        }
+        if (accept != null) {
+            request.header("Accept", accept);
+        }
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+    }
+}
@@ -0,0 +1,159 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Model.MessageBatchResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class CreateMessageBatchTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with two valid messages
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON with both messages created with consecutive ids and nothing rejected
+     */
+    @Test
+    public void createMessageBatchAllValid() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"first\", \"time_posted_epoch\": 1669947792}," +
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        MessageBatchResult result = objectMapper.readValue(response.body().toString(), MessageBatchResult.class);
+        Assert.assertEquals(new Message(2, 1, "first", 1669947792), result.created.get(0));
+        Assert.assertEquals(new Message(3, 1, "second", 1669947793), result.created.get(1));
+        Assert.assertTrue(result.rejected.isEmpty());
+
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .build();
+        HttpResponse getResponse = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        List<Message> messages = objectMapper.readValue(getResponse.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(3, messages.size());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a blank message and a message from a user
+     * that doesnt exist in db, alongside a valid message
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON with the valid message created and the other two rejected by index
+     */
+    @Test
+    public void createMessageBatchSomeRejected() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"\", \"time_posted_epoch\": 1669947792}," +
+                        "{\"posted_by\":1, \"message_text\": \"kept\", \"time_posted_epoch\": 1669947793}," +
+                        "{\"posted_by\":3, \"message_text\": \"no user\", \"time_posted_epoch\": 1669947794}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        MessageBatchResult result = objectMapper.readValue(response.body().toString(), MessageBatchResult.class);
+        Assert.assertEquals(1, result.created.size());
+        Assert.assertEquals(new Message(2, 1, "kept", 1669947793), result.created.get(0));
+        Assert.assertEquals(2, result.rejected.size());
+        Assert.assertEquals(0, result.rejected.get(0).index);
+        Assert.assertEquals(2, result.rejected.get(1).index);
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with a single object instead of an array
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void createMessageBatchNotAnArray() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"hello\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body().toString());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages/batch with more messages than api.messages.maxBatchSize
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void createMessageBatchTooLarge() throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < 101; i++) {
+            if (i > 0) {
+                batch.append(',');
+            }
+            batch.append("{\"posted_by\":1, \"message_text\": \"bulk ").append(i)
+                    .append("\", \"time_posted_epoch\": 1669947792}");
+        }
+        batch.append(']');
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body().toString());
+    }
+}
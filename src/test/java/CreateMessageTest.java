@@ -148,5 +148,29 @@ public class CreateMessageTest {
         Assert.assertEquals("", response.body().toString());
     }
 
+    /**
+     * Sending an http request to POST localhost:8080/messages with a posted_by that is not a number
+     * 
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body: 
+     */
+    @Test
+    public void createMessagePostedByNotANumber() throws IOException, InterruptedException {
+        HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{"+
+                        "\"posted_by\":\"abc\", " +
+                        "\"message_text\": \"message test\", " +
+                        "\"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse response = webClient.send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+        int status = response.statusCode();
+        
+        Assert.assertEquals(400, status);        
+        Assert.assertEquals("", response.body().toString());
+    }
+
 
 }
@@ -0,0 +1,100 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.JsonCodec;
+import Model.Message;
+
+/**
+ * Compares the controller's old per-request JSON path (a new ObjectMapper for each request, readValue from the body
+ * String, writeValueAsString and then the String handed to context.json) against one shared ObjectMapper and against
+ * JsonCodec, over 100k read-and-write round trips of a message body. This is not run by surefire; run it with
+ *
+ *  mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *  java -cp target/classes:target/test-classes:$(cat cp.txt) JsonCodecBenchmark
+ */
+public class JsonCodecBenchmark {
+    private static final int REQUESTS = 100_000;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 20;
+
+    private static final String BODY = "{\"posted_by\":1,\"message_text\":\"benchmark message text\","
+            + "\"time_posted_epoch\":1669947792}";
+    private static final byte[] BODY_BYTES = BODY.getBytes(StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws IOException {
+        ObjectMapper shared = new ObjectMapper();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            perRequestMapper();
+            sharedMapper(shared);
+            codec(out);
+        }
+
+        long perRequestNanos = 0;
+        long sharedNanos = 0;
+        long codecNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            perRequestMapper();
+            perRequestNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            sharedMapper(shared);
+            sharedNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            codec(out);
+            codecNanos += System.nanoTime() - start;
+        }
+
+        report("new ObjectMapper per request", perRequestNanos);
+        report("shared ObjectMapper", sharedNanos);
+        report("JsonCodec", codecNanos);
+    }
+
+    private static long perRequestMapper() throws IOException {
+        long checksum = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            ObjectMapper mapper = new ObjectMapper();
+            Message message = mapper.readValue(new String(BODY_BYTES, StandardCharsets.UTF_8), Message.class);
+            message.setMessage_id(i);
+            checksum += mapper.writeValueAsString(message).getBytes(StandardCharsets.UTF_8).length;
+        }
+        return checksum;
+    }
+
+    private static long sharedMapper(ObjectMapper mapper) throws IOException {
+        long checksum = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            Message message = mapper.readValue(BODY_BYTES, Message.class);
+            message.setMessage_id(i);
+            checksum += mapper.writeValueAsBytes(message).length;
+        }
+        return checksum;
+    }
+
+    private static long codec(ByteArrayOutputStream out) throws IOException {
+        long checksum = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            Message message = JsonCodec.readMessage(new ByteArrayInputStream(BODY_BYTES));
+            message.setMessage_id(i);
+            out.reset();
+            try (JsonGenerator generator = JsonCodec.createGenerator(out)) {
+                JsonCodec.writeMessage(generator, message);
+            }
+            checksum += out.size();
+        }
+        return checksum;
+    }
+
+    private static void report(String label, long totalNanos) {
+        double millisPerRound = totalNanos / 1_000_000.0 / MEASURED_ROUNDS;
+        System.out.printf("%-32s %8.2f ms per %d requests%n", label, millisPerRound, REQUESTS);
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import Controller.JsonCodec;
+import Controller.JsonCodec.Format;
+import Model.Account;
+import Model.Message;
+
+public class JsonCodecTest {
+    JsonCodec codec = new JsonCodec();
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Messages and accounts written by the codec should read back the same through Jackson databind, and the other
+     * way round.
+     */
+    @Test
+    public void roundTripsMessagesAndAccounts() throws IOException {
+        Message message = new Message(1, 2, "text with \"quotes\", \\ and \u00fcn\u00efcode", 1669947792);
+        Assert.assertEquals(message, objectMapper.readValue(codec.toJsonString(message, Message.class), Message.class));
+        Assert.assertEquals(message, JsonCodec.readMessage(stream(objectMapper.writeValueAsString(message))));
+
+        Account account = new Account(3, "testuser1", "password");
+        Assert.assertEquals(account, objectMapper.readValue(codec.toJsonString(account, Account.class), Account.class));
+        Assert.assertEquals(account, JsonCodec.readAccount(stream(objectMapper.writeValueAsString(account))));
+
+        List<Message> messages = Arrays.asList(message, new Message(4, 2, "second", 1669947793));
+        Assert.assertEquals(messages, objectMapper.readValue(codec.toJsonStream(messages, List.class),
+                new TypeReference<List<Message>>(){}));
+    }
+
+    /**
+     * Request bodies without some fields, with unknown fields, or with null elements should read like databind
+     * reads them, leaving missing fields at their defaults.
+     */
+    @Test
+    public void readsPartialBodies() throws IOException {
+        Message message = JsonCodec.readMessage(stream("{\"posted_by\":1, \"extra\": {\"a\": [1, 2]}, "
+                + "\"message_text\": \"hello\"}"));
+        Assert.assertEquals(new Message(0, 1, "hello", 0), message);
+        Assert.assertNull(JsonCodec.readMessage(stream("null")));
+
+        Message[] messages = JsonCodec.readMessages(stream("[{\"message_text\": \"a\"}, null]"));
+        Assert.assertEquals(2, messages.length);
+        Assert.assertEquals("a", messages[0].getMessage_text());
+        Assert.assertNull(messages[1]);
+        Assert.assertNull(JsonCodec.readMessages(stream("{\"message_text\": \"a\"}")));
+    }
+
+    /**
+     * Fields holding the wrong type of value should be rejected rather than read as a default.
+     */
+    @Test
+    public void rejectsMistypedFields() throws IOException {
+        for (String body : Arrays.asList("{\"posted_by\":\"abc\"}", "{\"posted_by\":1.5}",
+                "{\"time_posted_epoch\":true}", "{\"message_text\":5}", "{\"message_text\":[\"a\"]}")) {
+            try {
+                JsonCodec.readMessage(stream(body));
+                Assert.fail("expected " + body + " to be rejected");
+            } catch (JsonProcessingException e) {
+                // expected
+            }
+        }
+        try {
+            JsonCodec.readAccount(stream("{\"username\":{}, \"password\":\"p\"}"));
+            Assert.fail("expected an object username to be rejected");
+        } catch (JsonProcessingException e) {
+            // expected
+        }
+        Message message = JsonCodec.readMessage(stream("{\"posted_by\":null, \"message_text\":null}"));
+        Assert.assertEquals(0, message.getPosted_by());
+        Assert.assertNull(message.getMessage_text());
+    }
+
+    /**
+     * Values that are not accounts or messages should be written through the fallback ObjectMapper.
+     */
+    @Test
+    public void fallsBackForOtherTypes() throws IOException {
+        Map<String, Integer> metrics = Collections.singletonMap("db.pool.active", 1);
+        Assert.assertEquals(metrics, objectMapper.readValue(codec.toJsonString(metrics, Map.class),
+                new TypeReference<Map<String, Integer>>(){}));
+        Assert.assertEquals("[]", codec.toJsonString(Collections.emptyList(), List.class));
+    }
+
+    /**
+     * Messages should round trip through every binary format with the same field names as JSON, and the formats
+     * should be chosen from Accept and Content-Type headers.
+     */
+    @Test
+    public void binaryFormats() throws IOException {
+        Message message = new Message(1, 2, "binary \u00fcn\u00efcode", 1669947792);
+        for (Format format : Format.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonCodec.write(out, message, format);
+            Assert.assertEquals(message, JsonCodec.readMessage(new ByteArrayInputStream(out.toByteArray()), format));
+        }
+        ByteArrayOutputStream smile = new ByteArrayOutputStream();
+        JsonCodec.write(smile, message, Format.SMILE);
+        Assert.assertEquals(message, new ObjectMapper(new SmileFactory()).readValue(smile.toByteArray(), Message.class));
+
+        Assert.assertEquals(Format.JSON, Format.forAccept(null));
+        Assert.assertEquals(Format.JSON, Format.forAccept("text/html, */*;q=0.8"));
+        Assert.assertEquals(Format.CBOR, Format.forAccept("application/cbor, application/json;q=0.5"));
+        Assert.assertEquals(Format.JSON, Format.forAccept("application/cbor;q=0, application/json"));
+        Assert.assertEquals(Format.SMILE, Format.forContentType("Application/X-Jackson-Smile; charset=binary"));
+        Assert.assertEquals(Format.JSON, Format.forContentType("text/plain"));
+    }
+
+    /**
+     * Accept should be negotiated by q-value: a q below 1 still accepts a format, only q=0 refuses it, and the
+     * accepted format with the highest q wins wherever it appears in the header.
+     */
+    @Test
+    public void acceptHonoursQualityValues() {
+        Assert.assertEquals(Format.CBOR, Format.forAccept("application/cbor;q=0.9, application/json;q=0.5"));
+        Assert.assertEquals(Format.SMILE, Format.forAccept("application/x-jackson-smile;q=0.8"));
+        Assert.assertEquals(Format.CBOR, Format.forAccept("application/json;q=0.5, application/cbor;q=0.9"));
+        Assert.assertEquals(Format.SMILE,
+                Format.forAccept("application/cbor; q=0.4, application/x-jackson-smile; q=0.7, */*;q=0.1"));
+        Assert.assertEquals(Format.CBOR, Format.forAccept("application/cbor, application/x-jackson-smile"));
+        Assert.assertEquals(Format.JSON, Format.forAccept("application/cbor;q=0.2, */*"));
+        Assert.assertEquals(Format.JSON, Format.forAccept("application/cbor;q=0.0, application/x-jackson-smile;q=0.000"));
+        Assert.assertEquals(Format.JSON, Format.forAccept("application/cbor;q=abc"));
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,169 @@
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.LiveFeed;
+import Controller.SocialMediaController;
+import Util.BroadcastRing;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+import io.javalin.websocket.WsConfig;
+import io.javalin.websocket.WsConnectContext;
+import io.javalin.websocket.WsConnectHandler;
+
+public class LiveFeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Connecting to ws://localhost:8080/messages/live and then creating, updating and deleting a message
+     *
+     * Expected Frames:
+     *  created, updated and deleted events for the message, in that order, with increasing seq
+     */
+    @Test
+    public void pushesMessageChanges() throws Exception {
+        BlockingQueue<String> frames = new LinkedBlockingQueue<>();
+        WebSocket socket = webClient.newWebSocketBuilder()
+                .buildAsync(URI.create("ws://localhost:8080/messages/live"), new WebSocket.Listener() {
+                    private final StringBuilder text = new StringBuilder();
+
+                    @Override
+                    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                        text.append(data);
+                        if (last) {
+                            frames.add(text.toString());
+                            text.setLength(0);
+                        }
+                        webSocket.request(1);
+                        return null;
+                    }
+                })
+                .get(5, TimeUnit.SECONDS);
+        Thread.sleep(200);
+
+        send("POST", "/messages", "{\"posted_by\":1, \"message_text\": \"live\", \"time_posted_epoch\": 1669947793}");
+        send("PATCH", "/messages/2", "{\"message_text\": \"live edit\"}");
+        send("DELETE", "/messages/2", null);
+
+        JsonNode created = next(frames);
+        JsonNode updated = next(frames);
+        JsonNode deleted = next(frames);
+        Assert.assertEquals("created", created.get("type").asText());
+        Assert.assertEquals("live", created.get("message").get("message_text").asText());
+        Assert.assertEquals(2, created.get("message").get("message_id").asInt());
+        Assert.assertEquals("updated", updated.get("type").asText());
+        Assert.assertEquals("live edit", updated.get("message").get("message_text").asText());
+        Assert.assertEquals("deleted", deleted.get("type").asText());
+        Assert.assertTrue(created.get("seq").asLong() < updated.get("seq").asLong());
+        Assert.assertTrue(updated.get("seq").asLong() < deleted.get("seq").asLong());
+
+        socket.sendClose(WebSocket.NORMAL_CLOSURE, "").get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * A subscriber whose keep-alive ping fails, whether the write fails later or sendPing throws straight away,
+     * should be removed from the feed.
+     */
+    @Test
+    public void failedPingRemovesSubscriber() throws Exception {
+        LiveFeed feed = new LiveFeed(new BroadcastRing<>(16), 4, 10);
+        WsConnectHandler[] connect = new WsConnectHandler[1];
+        feed.configure(new WsConfig() {
+            @Override
+            public void onConnect(WsConnectHandler handler) {
+                connect[0] = handler;
+            }
+        });
+
+        RemoteEndpoint failingWrite = mock(RemoteEndpoint.class);
+        doAnswer(invocation -> {
+            invocation.getArgument(1, WriteCallback.class).writeFailed(new IOException("connection reset"));
+            return null;
+        }).when(failingWrite).sendPing(any(ByteBuffer.class), any(WriteCallback.class));
+        RemoteEndpoint throwing = mock(RemoteEndpoint.class);
+        doThrow(new IllegalStateException("closed")).when(throwing)
+                .sendPing(any(ByteBuffer.class), any(WriteCallback.class));
+
+        connect[0].handleConnect(new WsConnectContext("failing-write", session(failingWrite)));
+        connect[0].handleConnect(new WsConnectContext("throwing", session(throwing)));
+        Assert.assertEquals(2, feed.subscriberCount());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (feed.subscriberCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        int remaining = feed.subscriberCount();
+        feed.close();
+        Assert.assertEquals(0, remaining);
+    }
+
+    private static Session session(RemoteEndpoint remote) {
+        Session session = mock(Session.class);
+        when(session.getRemote()).thenReturn(remote);
+        return session;
+    }
+
+    private JsonNode next(BlockingQueue<String> frames) throws InterruptedException, IOException {
+        String frame = frames.poll(5, TimeUnit.SECONDS);
+        Assert.assertNotNull("no frame received", frame);
+        return objectMapper.readTree(frame);
+    }
+
+    private void send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body != null ? HttpRequest.BodyPublishers.ofString(body)
+                        : HttpRequest.BodyPublishers.noBody())
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
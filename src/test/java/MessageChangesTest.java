@@ -0,0 +1,137 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.MessageChange;
+import Model.MessageChanges;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageChangesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Taking a cursor from GET localhost:8080/messages/changes, then creating and editing a message
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: the created and updated changes after the cursor, then nothing after the new cursor
+     */
+    @Test
+    public void returnsChangesSinceCursor() throws IOException, InterruptedException {
+        String cursor = changes("").cursor;
+        send("POST", "/messages", "{\"posted_by\":1, \"message_text\": \"synced\", \"time_posted_epoch\": 1669947793}");
+        send("PATCH", "/messages/2", "{\"message_text\": \"synced edit\"}");
+
+        MessageChanges first = changes("?since=" + cursor + "&limit=1");
+        Assert.assertEquals(1, first.changes.size());
+        Assert.assertEquals(MessageChange.CREATED, first.changes.get(0).type);
+        Assert.assertEquals("synced", first.changes.get(0).message.getMessage_text());
+        Assert.assertTrue(first.more);
+
+        MessageChanges second = changes("?since=" + first.cursor);
+        Assert.assertEquals(1, second.changes.size());
+        Assert.assertEquals(MessageChange.UPDATED, second.changes.get(0).type);
+        Assert.assertEquals("synced edit", second.changes.get(0).message.getMessage_text());
+        Assert.assertFalse(second.more);
+
+        MessageChanges none = changes("?since=" + second.cursor);
+        Assert.assertTrue(none.changes.isEmpty());
+        Assert.assertEquals(second.cursor, none.cursor);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/changes with a cursor from another server run
+     *
+     * Expected Response:
+     *  Status Code: 410
+     *  Response Body: the latest cursor, to resume from after a full reload
+     */
+    @Test
+    public void unknownCursorIsGone() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/changes?since=earlier-5");
+        Assert.assertEquals(410, response.statusCode());
+        Assert.assertEquals(changes("").cursor, objectMapper.readValue(response.body(), MessageChanges.class).cursor);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages/changes with wait=10 when nothing has changed, then creating a message
+     *
+     * Expected Response:
+     *  Status Code: 200, as soon as the message is created
+     *  Response Body: the created change
+     */
+    @Test
+    public void longPollWaitsForChange() throws Exception {
+        String cursor = changes("").cursor;
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse<String>> poll = webClient.sendAsync(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/changes?since=" + cursor + "&wait=10"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        Thread.sleep(300);
+        Assert.assertFalse(poll.isDone());
+
+        send("POST", "/messages", "{\"posted_by\":1, \"message_text\": \"awaited\", \"time_posted_epoch\": 1669947793}");
+        HttpResponse<String> response = poll.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(200, response.statusCode());
+        MessageChanges result = objectMapper.readValue(response.body(), MessageChanges.class);
+        Assert.assertEquals(1, result.changes.size());
+        Assert.assertEquals("awaited", result.changes.get(0).message.getMessage_text());
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+    }
+
+    private MessageChanges changes(String query) throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/messages/changes" + query);
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), MessageChanges.class);
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        return webClient.send(HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import DAO.MessageGroupCommit;
+import Model.Message;
+import Util.ConnectionUtil;
+
+public class MessageGroupCommitTest {
+    MessageGroupCommit groupCommit;
+
+    /**
+     * Before every test, reset the database and start a group commit queue that waits long enough for
+     * concurrently submitted messages to share a commit.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        groupCommit = new MessageGroupCommit(new MessageDAO(), 16, 200_000);
+    }
+
+    @After
+    public void tearDown() {
+        groupCommit.close();
+    }
+
+    /**
+     * Submitting many messages at once should write them in fewer commits than messages, and every caller should
+     * get back its own message with a distinct generated id.
+     */
+    @Test
+    public void concurrentMessagesShareCommits() {
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            futures.add(groupCommit.submit(new Message(1, "group " + i, 1669947792 + i)));
+        }
+
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < futures.size(); i++) {
+            Message created = futures.get(i).join();
+            Assert.assertNotNull(created);
+            Assert.assertEquals("group " + i, created.getMessage_text());
+            Assert.assertEquals(1669947792 + i, created.getTime_posted_epoch());
+            ids.add(created.getMessage_id());
+        }
+        Assert.assertEquals(32, ids.size());
+        Assert.assertEquals(32, groupCommit.getMessageCount());
+        Assert.assertTrue(groupCommit.getBatchCount() < 32);
+        Assert.assertTrue(groupCommit.getMaxBatchSize() > 1);
+    }
+
+    /**
+     * A message referencing a user that doesnt exist in db should fail on its own without failing the valid
+     * messages committed alongside it.
+     */
+    @Test
+    public void invalidMessageDoesNotFailBatch() {
+        CompletableFuture<Message> valid = groupCommit.submit(new Message(1, "valid", 1669947792));
+        CompletableFuture<Message> invalid = groupCommit.submit(new Message(3, "no user", 1669947792));
+
+        Assert.assertNotNull(valid.join());
+        Assert.assertNull(invalid.join());
+    }
+}
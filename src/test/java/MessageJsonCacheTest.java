@@ -0,0 +1,61 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.MessageJsonCache;
+import Model.Message;
+
+public class MessageJsonCacheTest {
+    ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Writing the same messages twice should serialize each one once, and the output should read back as the
+     * same messages.
+     */
+    @Test
+    public void repeatedWritesReuseEncodings() throws IOException {
+        MessageJsonCache cache = new MessageJsonCache(100);
+        List<Message> messages = Arrays.asList(new Message(1, 1, "first \"quoted\"", 1669947792),
+                new Message(2, 1, "second \u00e9", 1669947793));
+
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            cache.writeAll(out, messages);
+            List<Message> actual = objectMapper.readValue(out.toByteArray(), new TypeReference<List<Message>>(){});
+            Assert.assertEquals(messages, actual);
+        }
+        Assert.assertEquals(2, cache.missCount());
+        Assert.assertEquals(2, cache.hitCount());
+    }
+
+    /**
+     * A message whose content changed should never be written from its old encoding, even without an invalidation.
+     */
+    @Test
+    public void changedMessageIsReencoded() throws IOException {
+        MessageJsonCache cache = new MessageJsonCache(100);
+        cache.encode(new Message(1, 1, "before", 1669947792));
+        Message after = new Message(1, 1, "after", 1669947792);
+        Assert.assertEquals(after, objectMapper.readValue(cache.encode(after), Message.class));
+
+        cache.invalidate(1);
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * An empty list should be written as an empty JSON array.
+     */
+    @Test
+    public void emptyListIsEmptyArray() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MessageJsonCache(0).writeAll(out, Arrays.asList());
+        Assert.assertEquals("[]", out.toString("UTF-8"));
+    }
+}
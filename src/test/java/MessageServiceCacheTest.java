@@ -0,0 +1,172 @@
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.DataAccessException;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageService;
+import Util.IntObjectCache;
+
+public class MessageServiceCacheTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, create a MessageService over a mock MessageDAO so database round trips can be counted.
+     */
+    @Before
+    public void setUp() {
+        messageDAO = mock(MessageDAO.class);
+        messageService = new MessageService(messageDAO);
+    }
+
+    /**
+     * Repeated reads of the same message id should reach the DAO once.
+     */
+    @Test
+    public void getMessageByIdIsCached() {
+        Message message = new Message(1, 1, "test message 1", 1669947792);
+        when(messageDAO.getMessageById(1)).thenReturn(message);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(message, messageService.getMessageById(1));
+        }
+        Assert.assertTrue(messageService.doesMessageExist(1));
+        verify(messageDAO, times(1)).getMessageById(1);
+    }
+
+    /**
+     * Repeated reads of a missing id should reach the DAO once, until a message with that id is created.
+     */
+    @Test
+    public void missingIdIsNegativelyCached() {
+        Message created = new Message(2, 1, "new", 1669947792);
+        when(messageDAO.getMessageById(2)).thenReturn(null);
+        when(messageDAO.createMessage(new Message(1, "new", 1669947792))).thenReturn(created);
+
+        Assert.assertNull(messageService.getMessageById(2));
+        Assert.assertFalse(messageService.doesMessageExist(2));
+        verify(messageDAO, times(1)).getMessageById(2);
+
+        messageService.createMessage(new Message(1, "new", 1669947792));
+        Assert.assertEquals(created, messageService.getMessageById(2));
+        verify(messageDAO, times(1)).getMessageById(2);
+    }
+
+    /**
+     * Updating a message should drop the cached copy, and deleting it should cache it as missing.
+     */
+    @Test
+    public void updateAndDeleteKeepCacheConsistent() {
+        Message original = new Message(1, 1, "before", 1669947792);
+        Message updated = new Message(1, 1, "after", 1669947792);
+        when(messageDAO.getMessageById(1)).thenReturn(original);
+        Assert.assertEquals(original, messageService.getMessageById(1));
+
+        when(messageDAO.updateMessage(1, "after")).thenReturn(updated);
+        when(messageDAO.getMessageById(1)).thenReturn(updated);
+        messageService.updateMessage(1, "after");
+        Assert.assertEquals(updated, messageService.getMessageById(1));
+
+        when(messageDAO.deleteMessage(1)).thenReturn(updated);
+        messageService.deleteMessage(1);
+        Assert.assertNull(messageService.getMessageById(1));
+        verify(messageDAO, times(2)).getMessageById(1);
+    }
+
+    /**
+     * The cache should stay within its capacity, and a load that raced with an invalidation should be dropped.
+     */
+    @Test
+    public void cacheIsBoundedAndDropsStaleLoads() {
+        IntObjectCache<String> cache = new IntObjectCache<>(64);
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, "value " + i);
+        }
+        Assert.assertTrue(cache.size() <= cache.capacity());
+        Assert.assertTrue(cache.evictionCount() > 0);
+
+        long stamp = cache.stamp(20_000);
+        cache.invalidate(20_000);
+        Assert.assertFalse(cache.putIfUnchanged(20_000, "stale", stamp));
+        Assert.assertNull(cache.get(20_000));
+    }
+
+    /**
+     * A multi-get should take cached messages from the cache and fetch only the misses, in one DAO call, and should
+     * then have cached the misses, including ids with no message.
+     */
+    @Test
+    public void getMessagesByIdsFetchesOnlyMisses() {
+        Message first = new Message(1, 1, "first", 1669947792);
+        Message third = new Message(3, 2, "third", 1669947793);
+        when(messageDAO.getMessageById(1)).thenReturn(first);
+        when(messageDAO.getMessagesByIds(new int[] {3, 4})).thenReturn(List.of(third));
+
+        messageService.getMessageById(1);
+        Assert.assertEquals(Arrays.asList(third, first), messageService.getMessagesByIds(new int[] {3, 1, 4}));
+        Assert.assertEquals(Arrays.asList(first, third), messageService.getMessagesByIds(new int[] {1, 4, 3}));
+        verify(messageDAO, times(1)).getMessagesByIds(new int[] {3, 4});
+    }
+
+    /**
+     * Concurrent reads of the same uncached message should share one DAO call.
+     */
+    @Test
+    public void concurrentMissesShareOneQuery() throws Exception {
+        Message message = new Message(1, 1, "viral", 1669947792);
+        CountDownLatch release = new CountDownLatch(1);
+        when(messageDAO.getMessageById(1)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return message;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Message>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> messageService.getMessageById(1)));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<Message> result : results) {
+                Assert.assertEquals(message, result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(messageDAO, times(1)).getMessageById(1);
+    }
+
+    /**
+     * A read whose query failed must not leave the message cached as missing.
+     */
+    @Test
+    public void failedLookupIsNotCached() {
+        Message message = new Message(3, 1, "flaky", 1669947792);
+        when(messageDAO.getMessageById(3))
+                .thenThrow(new DataAccessException(new SQLException("connection reset")))
+                .thenReturn(message);
+
+        Assert.assertThrows(DataAccessException.class, () -> messageService.getMessageById(3));
+        Assert.assertEquals(message, messageService.getMessageById(3));
+        Assert.assertEquals(message, messageService.getMessageById(3));
+        verify(messageDAO, times(2)).getMessageById(3);
+    }
+}
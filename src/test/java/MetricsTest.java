@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+import Controller.SocialMediaController;
+import Util.ConnectionPool;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending more requests to GET localhost:8080/messages than the pool has connections, then reading
+     * GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON map of metrics showing every connection was returned to the pool
+     */
+    @Test
+    public void connectionsAreReturnedToPool() throws IOException, InterruptedException {
+        int maxSize = ConnectionUtil.getPool().getMaxSize();
+        int activeBefore = ConnectionUtil.getPool().getActive();
+        long timeoutsBefore = ConnectionUtil.getPool().getTimeoutCount();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        for (int i = 0; i < maxSize * 3; i++) {
+            HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertFalse(response.body().toString().isEmpty());
+        }
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse response = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        Map<String, Number> metrics = objectMapper.readValue(response.body().toString(),
+                new TypeReference<Map<String, Number>>(){});
+        Assert.assertEquals(activeBefore, metrics.get("db.pool.active").intValue());
+        Assert.assertEquals(maxSize, metrics.get("db.pool.max").intValue());
+        Assert.assertTrue(metrics.get("db.pool.open").intValue() <= maxSize);
+        Assert.assertEquals(timeoutsBefore, metrics.get("db.pool.timeouts").longValue());
+    }
+
+    /**
+     * Sending repeated requests to GET localhost:8080/messages, then reading GET localhost:8080/metrics
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON map of metrics showing the repeated query was served from the statement cache
+     */
+    @Test
+    public void repeatedQueriesReusePreparedStatements() throws IOException, InterruptedException {
+        long hitsBefore = ConnectionUtil.getPool().getStatementCacheHits();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .build();
+        for (int i = 0; i < 20; i++) {
+            HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+        }
+
+        HttpRequest metricsRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/metrics"))
+                .build();
+        HttpResponse response = webClient.send(metricsRequest, HttpResponse.BodyHandlers.ofString());
+        Map<String, Number> metrics = objectMapper.readValue(response.body().toString(),
+                new TypeReference<Map<String, Number>>(){});
+        Assert.assertTrue(metrics.get("db.statementCache.hits").longValue() - hitsBefore >= 10);
+        Assert.assertTrue(metrics.containsKey("db.statementCache.misses"));
+    }
+
+    /**
+     * Many threads borrowing from a pool of two connections at once, each holding its connection for a while, then
+     * one more borrower while both connections are held
+     *
+     * Expected Result:
+     *  No more than two connections are ever lent out or open, borrowers that had to queue show up in the wait
+     *  metrics, and the borrower that outlasts the borrow timeout fails and is counted as a timeout
+     */
+    @Test
+    public void concurrentBorrowersAreBoundedByPoolSize() throws Exception {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:poolBound;DB_CLOSE_DELAY=-1");
+        ConnectionPool pool = new ConnectionPool(dataSource, 2, 0, 200, 1, 0);
+        int threads = 8;
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> borrowers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                borrowers.add(executor.submit(() -> {
+                    start.await();
+                    while (true) {
+                        try (Connection connection = pool.borrow()) {
+                            maxActive.accumulateAndGet(pool.getActive(), Math::max);
+                            Thread.sleep(20);
+                            return null;
+                        } catch (SQLTransientConnectionException e) {
+                            // timed out behind the other borrowers, queue again
+                        }
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<?> borrower : borrowers) {
+                borrower.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertTrue(maxActive.get() <= 2);
+        Assert.assertTrue(pool.getOpen() <= 2);
+        Assert.assertEquals(0, pool.getActive());
+        Assert.assertTrue(pool.getBorrowCount() >= threads);
+        Assert.assertTrue(pool.getTotalWaitNanos() > 0);
+        Assert.assertTrue(pool.getMaxWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+
+        long timeoutsBefore = pool.getTimeoutCount();
+        try (Connection first = pool.borrow(); Connection second = pool.borrow()) {
+            pool.borrow();
+            Assert.fail("expected the third borrow to time out");
+        } catch (SQLException e) {
+            Assert.assertTrue(e instanceof SQLTransientConnectionException);
+        }
+        Assert.assertEquals(timeoutsBefore + 1, pool.getTimeoutCount());
+        Assert.assertEquals(0, pool.getActive());
+    }
+}
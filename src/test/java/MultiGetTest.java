@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.AccountLookupResult;
+import Model.Message;
+import Model.MessageLookupResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MultiGetTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?ids=2,1,99&ids=1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: messages 2 and 1 in that order, and 99 reported missing
+     */
+    @Test
+    public void getMessagesByIds() throws IOException, InterruptedException {
+        HttpRequest post = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"second\", \"time_posted_epoch\": 1669947793}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(post, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> response = get("/messages?ids=2,1,99&ids=1");
+        Assert.assertEquals(200, response.statusCode());
+        MessageLookupResult result = objectMapper.readValue(response.body(), MessageLookupResult.class);
+        Assert.assertEquals(List.of(new Message(2, 1, "second", 1669947793),
+                new Message(1, 1, "test message 1", 1669947792)), result.messages);
+        Assert.assertEquals(List.of(99), result.missing);
+    }
+
+    /**
+     * Sending GET localhost:8080/accounts?ids=1,5
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: account 1 without its password, and 5 reported missing
+     */
+    @Test
+    public void getAccountsByIds() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("/accounts?ids=1,5");
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertFalse(response.body().contains("password"));
+        AccountLookupResult result = objectMapper.readValue(response.body(), AccountLookupResult.class);
+        Assert.assertEquals(1, result.accounts.size());
+        Assert.assertEquals(1, result.accounts.get(0).account_id);
+        Assert.assertEquals("testuser1", result.accounts.get(0).username);
+        Assert.assertEquals(List.of(5), result.missing);
+    }
+
+    /**
+     * Sending GET localhost:8080/messages?ids=1,x and GET localhost:8080/accounts?ids=
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void invalidIds() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?ids=1,x").statusCode());
+        Assert.assertEquals(400, get("/accounts?ids=").statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PaginateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, create a new webClient and ObjectMapper
+     * for interacting locally on the web, and post four more messages so that there are five in total.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException, IOException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString("[" +
+                        "{\"posted_by\":1, \"message_text\": \"m2\", \"time_posted_epoch\": 1669947793}," +
+                        "{\"posted_by\":1, \"message_text\": \"m3\", \"time_posted_epoch\": 1669947794}," +
+                        "{\"posted_by\":1, \"message_text\": \"m4\", \"time_posted_epoch\": 1669947795}," +
+                        "{\"posted_by\":1, \"message_text\": \"m5\", \"time_posted_epoch\": 1669947796}]"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2, following the X-Next-Cursor header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: pages of 2, 2 and 1 messages in message_id order, with no cursor on the last page
+     */
+    @Test
+    public void getAllMessagesFollowingCursor() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("http://localhost:8080/messages?limit=2");
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(List.of(1, 2), ids(first));
+        Assert.assertEquals("2", first.headers().firstValue("X-Next-Cursor").orElse(null));
+
+        HttpResponse<String> second = get("http://localhost:8080/messages?limit=2&after=2");
+        Assert.assertEquals(List.of(3, 4), ids(second));
+        Assert.assertEquals("4", second.headers().firstValue("X-Next-Cursor").orElse(null));
+
+        HttpResponse<String> last = get("http://localhost:8080/messages?limit=2&after=4");
+        Assert.assertEquals(List.of(5), ids(last));
+        Assert.assertFalse(last.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Posting a message older than the account's others, then sending http requests to
+     * GET localhost:8080/accounts/1/messages?limit=3, following the X-Next-Cursor header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: pages of 3 and 3 messages oldest first, the older message leading, with no cursor on the last
+     *  page
+     */
+    @Test
+    public void getAllMessagesByUserFollowingCursor() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":1, \"message_text\": \"m6\", \"time_posted_epoch\": 1669947700}"))
+                .header("Content-Type", "application/json")
+                .build();
+        webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<String> first = get("http://localhost:8080/accounts/1/messages?limit=3");
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(List.of(6, 1, 2), ids(first));
+        String cursor = first.headers().firstValue("X-Next-Cursor").orElse(null);
+        Assert.assertEquals("1669947793-2", cursor);
+
+        HttpResponse<String> last = get("http://localhost:8080/accounts/1/messages?limit=3&after=" + cursor);
+        Assert.assertEquals(200, last.statusCode());
+        Assert.assertEquals(List.of(3, 4, 5), ids(last));
+        Assert.assertFalse(last.headers().firstValue("X-Next-Cursor").isPresent());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages?after=1, which is not an account cursor
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void getAllMessagesByUserInvalidCursor() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/accounts/1/messages?after=1");
+        Assert.assertEquals(400, response.statusCode());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?limit=0
+     *
+     * Expected Response:
+     *  Status Code: 400
+     *  Response Body:
+     */
+    @Test
+    public void getAllMessagesInvalidLimit() throws IOException, InterruptedException {
+        HttpResponse<String> response = get("http://localhost:8080/messages?limit=0");
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("", response.body());
+    }
+
+    private HttpResponse<String> get(String uri) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(uri)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> ids(HttpResponse<String> response) throws IOException {
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        return messages.stream().map(Message::getMessage_id).collect(Collectors.toList());
+    }
+}
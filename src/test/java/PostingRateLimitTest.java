@@ -0,0 +1,138 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.MessageBatchResult;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PostingRateLimitTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Posting and editing more messages than the burst allows from one account should be answered with 429 and
+     * Retry-After, while another account can still post.
+     */
+    @Test
+    public void floodingAccountIsLimited() throws IOException, InterruptedException {
+        int status = 200;
+        int posted = 0;
+        while (status == 200 && posted < 1000) {
+            status = post(1).statusCode();
+            posted++;
+        }
+        Assert.assertEquals(429, status);
+        Assert.assertTrue("burst allowed " + posted, posted > 1);
+
+        HttpRequest patch = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\": \"edited\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> patched = webClient.send(patch, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(429, patched.statusCode());
+        Assert.assertEquals("1", patched.headers().firstValue("Retry-After").orElse(null));
+
+        HttpRequest register = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"quiet\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(register, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(200, post(2).statusCode());
+    }
+
+    /**
+     * Posts that fail validation, or name an account that does not exist, should be answered with 400 and not use up
+     * the account's rate limit.
+     */
+    @Test
+    public void rejectedPostsDoNotUseTheLimit() throws IOException, InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(400, post(1, "").statusCode());
+            Assert.assertEquals(400, post(99, "flood").statusCode());
+        }
+        Assert.assertEquals(200, post(1).statusCode());
+    }
+
+    /**
+     * Each message in a batch should cost its account one token, the messages past the burst being rejected with
+     * Retry-After, and a batch with nothing left to create answered with 429.
+     */
+    @Test
+    public void batchIsChargedPerMessage() throws IOException, InterruptedException {
+        HttpResponse<String> response = postBatch(1, 50);
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+        MessageBatchResult result = new ObjectMapper().readValue(response.body(), MessageBatchResult.class);
+        Assert.assertTrue("burst allowed " + result.created.size(), result.created.size() > 1);
+        Assert.assertTrue(result.created.size() < 50);
+        Assert.assertEquals(50, result.created.size() + result.rejected.size());
+        Assert.assertEquals("posted_by has exceeded its posting rate limit", result.rejected.get(0).reason);
+
+        Assert.assertEquals(429, postBatch(1, 10).statusCode());
+        Assert.assertEquals(429, post(1).statusCode());
+    }
+
+    private HttpResponse<String> postBatch(int postedBy, int count) throws IOException, InterruptedException {
+        StringBuilder batch = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                batch.append(',');
+            }
+            batch.append("{\"posted_by\":").append(postedBy)
+                    .append(", \"message_text\": \"flood\", \"time_posted_epoch\": 1669947792}");
+        }
+        batch.append(']');
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/batch"))
+                .POST(HttpRequest.BodyPublishers.ofString(batch.toString()))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(int postedBy) throws IOException, InterruptedException {
+        return post(postedBy, "flood");
+    }
+
+    private HttpResponse<String> post(int postedBy, String text) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"posted_by\":" + postedBy + ", \"message_text\": \"" + text + "\", \"time_posted_epoch\": 1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
@@ -3,6 +3,9 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -87,4 +90,29 @@ public class RetrieveMessageByMessageIdTest {
     }
 
 
+    /**
+     * While every pooled connection is held elsewhere, GET localhost:8080/messages/1 cannot borrow one in time.
+     *
+     * Expected Response:
+     *  Status Code: 503, with a Retry-After header
+     */
+    @Test
+    public void getMessageWhilePoolExhaustedIsShed() throws IOException, InterruptedException {
+        List<Connection> held = new ArrayList<>();
+        try {
+            for (int i = 0; i < ConnectionUtil.getPool().getMaxSize(); i++) {
+                held.add(ConnectionUtil.getConnection());
+            }
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/1"))
+                    .build();
+            HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+
+            Assert.assertEquals(503, response.statusCode());
+            Assert.assertTrue(response.headers().firstValue("Retry-After").isPresent());
+        } finally {
+            held.forEach(ConnectionUtil::release);
+        }
+    }
+
 }
@@ -0,0 +1,100 @@
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import DAO.MessageRowMapper;
+import Model.Message;
+
+/**
+ * Compares the name-based SELECT * mapping the DAOs used to do against MessageRowMapper's explicit column list and
+ * ordinal access, over a 100k-row scan of an in-memory message table. This is not run by surefire; run it with
+ *
+ *  mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *  java -cp target/classes:target/test-classes:$(cat cp.txt) RowMapperBenchmark
+ */
+public class RowMapperBenchmark {
+    private static final int ROWS = 100_000;
+    private static final int WARMUP_ROUNDS = 10;
+    private static final int MEASURED_ROUNDS = 20;
+
+    public static void main(String[] args) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:h2:mem:rowmapper", "sa", "");
+        Statement statement = connection.createStatement();
+        statement.execute("CREATE TABLE message (message_id int primary key auto_increment, posted_by int, "
+                + "message_text varchar(255), time_posted_epoch bigint)");
+        statement.execute("INSERT INTO message (posted_by, message_text, time_posted_epoch) "
+                + "SELECT MOD(X, 1000), 'benchmark message ' || X, 1669947792 + X FROM SYSTEM_RANGE(1, " + ROWS + ")");
+
+        PreparedStatement byName = connection.prepareStatement("SELECT * FROM message");
+        PreparedStatement byOrdinal = connection.prepareStatement(
+                "SELECT " + MessageRowMapper.COLUMNS + " FROM message");
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            scanByName(byName);
+            scanByOrdinal(byOrdinal);
+            scanIntoSink(byOrdinal);
+        }
+
+        long nameNanos = 0;
+        long ordinalNanos = 0;
+        long sinkNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            scanByName(byName);
+            nameNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            scanByOrdinal(byOrdinal);
+            ordinalNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            scanIntoSink(byOrdinal);
+            sinkNanos += System.nanoTime() - start;
+        }
+
+        report("SELECT * with name lookups", nameNanos);
+        report("MessageRowMapper.mapAll", ordinalNanos);
+        report("MessageRowMapper.mapInto sink", sinkNanos);
+        connection.close();
+    }
+
+    private static List<Message> scanByName(PreparedStatement preparedStatement) throws SQLException {
+        List<Message> messages = new ArrayList<>(ROWS);
+        ResultSet rs = preparedStatement.executeQuery();
+        while (rs.next()) {
+            messages.add(new Message(rs.getInt("message_id"),
+                    rs.getInt("posted_by"),
+                    rs.getString("message_text"),
+                    rs.getLong("time_posted_epoch")));
+        }
+        return messages;
+    }
+
+    private static List<Message> scanByOrdinal(PreparedStatement preparedStatement) throws SQLException {
+        ResultSet rs = preparedStatement.executeQuery();
+        return MessageRowMapper.mapAll(rs, new ArrayList<>(ROWS));
+    }
+
+    private static long scanIntoSink(PreparedStatement preparedStatement) throws SQLException {
+        long[] checksum = new long[1];
+        ResultSet rs = preparedStatement.executeQuery();
+        try {
+            MessageRowMapper.mapInto(rs, (messageId, postedBy, messageText, timePostedEpoch) ->
+                    checksum[0] += messageId + postedBy + messageText.length() + timePostedEpoch);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return checksum[0];
+    }
+
+    private static void report(String label, long totalNanos) {
+        double millisPerScan = totalNanos / 1_000_000.0 / MEASURED_ROUNDS;
+        System.out.printf("%-32s %8.2f ms per %d-row scan%n", label, millisPerScan, ROWS);
+    }
+}
@@ -0,0 +1,87 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class SchemaMigrationTest {
+    Connection connection;
+
+    /**
+     * Before every test, reset the database, which re-applies every migration, and borrow a connection.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        connection = ConnectionUtil.getConnection();
+    }
+
+    @After
+    public void tearDown() {
+        ConnectionUtil.release(connection);
+    }
+
+    /**
+     * Every migration should be recorded once, and migrating an up to date schema should change nothing.
+     */
+    @Test
+    public void migrationsAppliedOnce() throws SQLException {
+        Assert.assertEquals(4, SchemaMigrator.currentVersion(connection));
+        Assert.assertEquals(4, SchemaMigrator.migrate(connection));
+
+        ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM schema_version");
+        rs.next();
+        Assert.assertEquals(4, rs.getInt(1));
+    }
+
+    /**
+     * MessageDAO.getAllMessagesByUser should look up one account's messages through the (posted_by,
+     * time_posted_epoch) index rather than scanning the message table.
+     */
+    @Test
+    public void messagesByUserUsesCompositeIndex() throws SQLException {
+        String plan = explain(MessageDAO.MESSAGES_BY_USER_SQL);
+        Assert.assertTrue(plan, plan.contains("MESSAGE_POSTED_BY_TIME_IDX: POSTED_BY = ?1"));
+        Assert.assertFalse(plan, plan.contains("tableScan"));
+    }
+
+    /**
+     * MessageDAO.getAllMessages should walk the (time_posted_epoch, message_id) index instead of sorting.
+     */
+    @Test
+    public void allMessagesUsesTimeIndex() throws SQLException {
+        String plan = explain(MessageDAO.ALL_MESSAGES_SQL);
+        Assert.assertTrue(plan, plan.contains("MESSAGE_TIME_ID_IDX"));
+        Assert.assertTrue(plan, plan.contains("index sorted"));
+    }
+
+    /**
+     * MessageDAO.getMessagesAfter should seek the primary key to the cursor instead of scanning earlier rows.
+     */
+    @Test
+    public void messagesPageSeeksPrimaryKey() throws SQLException {
+        String plan = explain(MessageDAO.MESSAGES_AFTER_SQL);
+        Assert.assertTrue(plan, plan.contains("PRIMARY_KEY"));
+        Assert.assertTrue(plan, plan.contains("MESSAGE_ID > ?1"));
+        Assert.assertFalse(plan, plan.contains("tableScan"));
+    }
+
+    private String explain(String sql) throws SQLException {
+        PreparedStatement preparedStatement = connection.prepareStatement("EXPLAIN " + sql);
+        int parameters = preparedStatement.getParameterMetaData().getParameterCount();
+        for (int i = 1; i <= parameters; i++) {
+            preparedStatement.setInt(i, 1);
+        }
+        ResultSet rs = preparedStatement.executeQuery();
+        rs.next();
+        return rs.getString(1);
+    }
+}
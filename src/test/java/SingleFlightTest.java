@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.SingleFlight;
+
+public class SingleFlightTest {
+    ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Callers that arrive while a load of the same key and stamp is running should wait for it and share its result.
+     */
+    @Test
+    public void concurrentLoadsShareOneCall() throws Exception {
+        SingleFlight<Integer, String> flight = new SingleFlight<>("test.singleFlight");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> flight.load(1, 0, () -> {
+                calls.incrementAndGet();
+                await(release);
+                return "loaded";
+            })));
+        }
+        while (flight.getCoalescedCount() < 7) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<String> result : results) {
+            Assert.assertEquals("loaded", result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(1, flight.getLoadCount());
+    }
+
+    /**
+     * A caller with a different stamp should run its own load, and a failed load should fail its waiters too.
+     */
+    @Test
+    public void changedStampLoadsAgainAndFailuresPropagate() throws Exception {
+        SingleFlight<Integer, String> flight = new SingleFlight<>("test.singleFlight");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = executor.submit(() -> flight.load(1, 0, () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("query failed");
+        }));
+        started.await(5, TimeUnit.SECONDS);
+
+        Future<String> waiter = executor.submit(() -> flight.load(1, 0, () -> "unused"));
+        while (flight.getCoalescedCount() < 1) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals("fresh", flight.load(1, 1, () -> "fresh"));
+        release.countDown();
+        for (Future<String> result : List.of(first, waiter)) {
+            try {
+                result.get(5, TimeUnit.SECONDS);
+                Assert.fail("expected the load to fail");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        }
+    }
+
+    /**
+     * Callers that miss with a new stamp while a load with an old stamp is still running should share one new load,
+     * not each run their own.
+     */
+    @Test
+    public void missesAfterStampChangeShareOneLoad() throws Exception {
+        SingleFlight<Integer, String> flight = new SingleFlight<>("test.singleFlight");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> stale = executor.submit(() -> flight.load(1, 0, () -> {
+            started.countDown();
+            await(release);
+            return "stale";
+        }));
+        started.await(5, TimeUnit.SECONDS);
+
+        AtomicInteger freshCalls = new AtomicInteger();
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            results.add(executor.submit(() -> flight.load(1, 1, () -> {
+                freshCalls.incrementAndGet();
+                await(release);
+                return "fresh";
+            })));
+        }
+        while (flight.getCoalescedCount() < 6) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        Assert.assertEquals("stale", stale.get(5, TimeUnit.SECONDS));
+        for (Future<String> result : results) {
+            Assert.assertEquals("fresh", result.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, freshCalls.get());
+        Assert.assertEquals(2, flight.getLoadCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class StreamAllMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true after inserting more messages than fit in
+     * one default page
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON array of every message in message_id order
+     */
+    @Test
+    public void streamAllMessages() throws IOException, InterruptedException {
+        // inserted straight through the DAO, as one account may not post this many through the API at once
+        List<Message> bulk = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            bulk.add(new Message(1, "bulk " + i, 1669947793 + i));
+        }
+        new MessageDAO().createMessages(bulk);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=true"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        for (int i = 0; i < 250; i++) {
+            expectedResult.add(new Message(i + 2, 1, "bulk " + i, 1669947793 + i));
+        }
+        List<Message> actualResult = objectMapper.readValue(response.body().toString(), new TypeReference<List<Message>>(){});
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages?stream=true with no messages in db
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON represenation of an empty list
+     */
+    @Test
+    public void streamAllMessagesNoMessages() throws IOException, InterruptedException {
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?stream=true"))
+                .build();
+        HttpResponse response = webClient.send(request, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("[]", response.body().toString());
+    }
+
+    /**
+     * Streaming with a sink that fails on the first row, then streaming again with a sink that keeps every row.
+     *
+     * Expected Result:
+     *  The failed walk reports false and gives its connection back, and the next walk still sees every message
+     */
+    @Test
+    public void streamAllMessagesAfterSinkFailure() {
+        MessageDAO messageDAO = new MessageDAO();
+        int activeBefore = ConnectionUtil.getPool().getActive();
+
+        boolean failed = messageDAO.streamAllMessages((messageId, postedBy, messageText, timePostedEpoch) -> {
+            throw new IOException("client went away");
+        });
+        Assert.assertFalse(failed);
+        Assert.assertEquals(activeBefore, ConnectionUtil.getPool().getActive());
+
+        List<Message> actualResult = new ArrayList<>();
+        boolean streamed = messageDAO.streamAllMessages((messageId, postedBy, messageText, timePostedEpoch) ->
+                actualResult.add(new Message(messageId, postedBy, messageText, timePostedEpoch)));
+        Assert.assertTrue(streamed);
+        List<Message> expectedResult = new ArrayList<>();
+        expectedResult.add(new Message(1, 1, "test message 1", 1669947792));
+        Assert.assertEquals(expectedResult, actualResult);
+    }
+}
@@ -0,0 +1,110 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.VirtualThreads;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+/**
+ * Load test comparing handlers on platform threads against handlers on virtual threads. It starts the API, keeps
+ * CONCURRENCY requests to GET /messages?limit=10 in flight until REQUESTS have completed, and reports throughput,
+ * latency percentiles and how many requests were shed with 503. Every request queries the database, so handlers
+ * spend most of their time blocked on JDBC.
+ *
+ * The thread mode is fixed when the controller class loads, so each mode is a separate run, chosen with
+ * server.virtualThreads. Unless they are given, the scans bulkhead and limiter are fixed at CONCURRENCY so that it is
+ * the threads, not the bulkhead or the limiter, that are measured. Virtual threads need JDK 21. This is not run by
+ * surefire; run it with
+ *
+ *  mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *  java -Dserver.maxThreads=50 -cp target/classes:target/test-classes:$(cat cp.txt) ThreadModeLoadTest
+ *  java -Dserver.virtualThreads=true -cp target/classes:target/test-classes:$(cat cp.txt) ThreadModeLoadTest
+ */
+public class ThreadModeLoadTest {
+    private static final int CONCURRENCY = Integer.getInteger("load.concurrency", 1000);
+    private static final int REQUESTS = Integer.getInteger("load.requests", 50_000);
+    private static final int WARMUP_REQUESTS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        boolean virtualThreads = Boolean.getBoolean("server.virtualThreads");
+        if (virtualThreads && !VirtualThreads.areSupported()) {
+            System.out.println("virtual threads are not supported by this JVM");
+            System.exit(1);
+        }
+        System.getProperties().putIfAbsent("db.bulkhead.scans.threads", String.valueOf(CONCURRENCY));
+        System.getProperties().putIfAbsent("db.bulkhead.scans.queueSize", String.valueOf(CONCURRENCY));
+        System.getProperties().putIfAbsent("api.limit.scans.initialLimit", String.valueOf(CONCURRENCY));
+        System.getProperties().putIfAbsent("api.limit.scans.minLimit", String.valueOf(CONCURRENCY));
+        System.getProperties().putIfAbsent("api.limit.scans.maxLimit", String.valueOf(CONCURRENCY));
+        ConnectionUtil.resetTestDatabase();
+        run(virtualThreads);
+        System.exit(0);
+    }
+
+    private static void run(boolean virtualThreads) throws Exception {
+        Javalin app = new SocialMediaController().startAPI();
+        app.start(8080);
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages?limit=10"))
+                .build();
+
+        load(client, request, WARMUP_REQUESTS);
+        long start = System.nanoTime();
+        Result result = load(client, request, REQUESTS);
+        long elapsedNanos = System.nanoTime() - start;
+        app.stop();
+
+        long[] latencies = result.latencyNanos;
+        Arrays.sort(latencies);
+        System.out.printf("%-17s %8.0f req/s  p50 %7.2f ms  p99 %7.2f ms  max %7.2f ms  shed %d  errors %d%n",
+                virtualThreads ? "virtual threads" : "platform threads",
+                REQUESTS / (elapsedNanos / 1e9),
+                latencies[latencies.length / 2] / 1e6,
+                latencies[(int) (latencies.length * 0.99)] / 1e6,
+                latencies[latencies.length - 1] / 1e6,
+                result.shed.get(),
+                result.errors.get());
+    }
+
+    private static Result load(HttpClient client, HttpRequest request, int requests) throws InterruptedException {
+        Result result = new Result(requests);
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[requests];
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquire();
+            int index = i;
+            long sent = System.nanoTime();
+            futures[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        result.latencyNanos[index] = System.nanoTime() - sent;
+                        if (error == null && response.statusCode() == 503) {
+                            result.shed.incrementAndGet();
+                        } else if (error != null || response.statusCode() != 200) {
+                            result.errors.incrementAndGet();
+                        }
+                        inFlight.release();
+                    });
+        }
+        CompletableFuture.allOf(futures).exceptionally(error -> null).join();
+        return result;
+    }
+
+    private static class Result {
+        final long[] latencyNanos;
+        final AtomicInteger shed = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+
+        Result(int requests) {
+            this.latencyNanos = new long[requests];
+        }
+    }
+}
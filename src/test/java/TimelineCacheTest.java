@@ -0,0 +1,259 @@
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.MessageService;
+import Util.TimelineCache;
+
+public class TimelineCacheTest {
+    MessageDAO messageDAO;
+    MessageService messageService;
+
+    /**
+     * Before every test, create a MessageService over a mock MessageDAO so database round trips can be counted.
+     */
+    @Before
+    public void setUp() {
+        messageDAO = mock(MessageDAO.class);
+        messageService = new MessageService(messageDAO);
+    }
+
+    /**
+     * After the first profile view, creates and deletes should patch the account's timeline so later views
+     * reflect them without loading the account's messages again.
+     */
+    @Test
+    public void timelineIsPatchedNotRebuilt() {
+        Message first = new Message(1, 1, "first", 100);
+        Message older = new Message(2, 1, "older", 50);
+        Message newer = new Message(3, 1, "newer", 200);
+        when(messageDAO.getAllMessagesByUser(1)).thenReturn(new ArrayList<>(Arrays.asList(first)));
+        when(messageDAO.createMessage(any(Message.class))).thenReturn(older, newer);
+        when(messageDAO.getMessagesByIds(any(int[].class))).thenReturn(Arrays.asList(first));
+
+        Assert.assertEquals(Arrays.asList(first), messages(1));
+        messageService.createMessage(new Message(1, "older", 50));
+        messageService.createMessage(new Message(1, "newer", 200));
+        Assert.assertEquals(Arrays.asList(older, first, newer), messages(1));
+
+        when(messageDAO.deleteMessage(1)).thenReturn(first);
+        messageService.deleteMessage(1);
+        Assert.assertEquals(Arrays.asList(older, newer), messages(1));
+
+        verify(messageDAO, times(1)).getAllMessagesByUser(1);
+    }
+
+    /**
+     * Messages evicted from the message cache should be fetched together in one query, in timeline order.
+     */
+    @Test
+    public void updatedMessagesAreResolvedInOneQuery() {
+        Message first = new Message(1, 1, "first", 100);
+        Message second = new Message(2, 1, "second", 200);
+        Message updated = new Message(2, 1, "updated", 200);
+        when(messageDAO.getAllMessagesByUser(1)).thenReturn(new ArrayList<>(Arrays.asList(first, second)));
+        when(messageDAO.updateMessage(2, "updated")).thenReturn(updated);
+        when(messageDAO.getMessagesByIds(any(int[].class))).thenReturn(Arrays.asList(first, updated));
+
+        messages(1);
+        messageService.updateMessage(2, "updated");
+        Assert.assertEquals(Arrays.asList(first, updated), messages(1));
+
+        verify(messageDAO, times(1)).getMessagesByIds(any(int[].class));
+        verify(messageDAO, never()).getMessageById(2);
+    }
+
+    /**
+     * Pages of an account's messages should be cut from the cached timeline in time order, the cursor carrying the
+     * time and id of the last message on the page.
+     */
+    @Test
+    public void pagesAreServedFromTimeline() {
+        Message first = new Message(1, 1, "first", 300);
+        Message second = new Message(2, 1, "second", 100);
+        Message third = new Message(3, 1, "third", 200);
+        when(messageDAO.getAllMessagesByUser(1)).thenReturn(new ArrayList<>(Arrays.asList(second, third, first)));
+        when(messageDAO.getMessagesByIds(any(int[].class))).thenReturn(Arrays.asList(first));
+
+        MessagePage page = messageService.getMessagesPageByUser(1, null, 2);
+        Assert.assertEquals(Arrays.asList(second, third), page.messages);
+        Assert.assertEquals("200-3", page.next);
+        page = messageService.getMessagesPageByUser(1, page.next, 2);
+        Assert.assertEquals(Arrays.asList(first), page.messages);
+        Assert.assertNull(page.next);
+        Assert.assertNull(messageService.getMessagesPageByUser(1, "3", 2));
+
+        verify(messageDAO, times(1)).getAllMessagesByUser(1);
+    }
+
+    /**
+     * An account with no messages should have its empty timeline cached like any other, and patched when it posts.
+     */
+    @Test
+    public void emptyTimelineIsCached() {
+        Message first = new Message(1, 2, "first", 100);
+        when(messageDAO.getAllMessagesByUser(2)).thenReturn(new ArrayList<>());
+        when(messageDAO.createMessage(any(Message.class))).thenReturn(first);
+        when(messageDAO.getMessagesByIds(any(int[].class))).thenReturn(Arrays.asList(first));
+
+        Assert.assertTrue(messages(2).isEmpty());
+        Assert.assertTrue(messages(2).isEmpty());
+        messageService.createMessage(new Message(2, "first", 100));
+        Assert.assertEquals(Arrays.asList(first), messages(2));
+
+        verify(messageDAO, times(1)).getAllMessagesByUser(2);
+    }
+
+    /**
+     * A page whose messages could not all be loaded should still link to the next page, with the cursor taken from
+     * the timeline rather than from the messages that were loaded.
+     */
+    @Test
+    public void nextCursorSurvivesUnresolvedMessages() {
+        Message first = new Message(1, 1, "first", 100);
+        Message second = new Message(2, 1, "second", 200);
+        Message third = new Message(3, 1, "third", 300);
+        when(messageDAO.getAllMessagesByUser(1)).thenReturn(new ArrayList<>(Arrays.asList(first, second, third)));
+        messageService.getMessagesPageByUser(1, null, 1);
+
+        // both messages on the first page drop out of the message cache and fail to load again
+        messageService.updateMessage(1, "edited");
+        messageService.updateMessage(2, "edited");
+        when(messageDAO.getMessagesByIds(any(int[].class))).thenReturn(null);
+        MessagePage page = messageService.getMessagesPageByUser(1, null, 2);
+        Assert.assertTrue(page.messages.isEmpty());
+        Assert.assertEquals("200-2", page.next);
+    }
+
+    /**
+     * A page cut from the middle of a cached timeline should start right after the cursor, even when the cursor's
+     * message has since been deleted.
+     */
+    @Test
+    public void pageStartsAfterCursor() {
+        TimelineCache cache = new TimelineCache(4096);
+        cache.putIfUnchanged(1, new int[]{4, 2, 5, 3}, new long[]{10, 20, 20, 30}, cache.stamp(1));
+        Assert.assertArrayEquals(new int[]{4, 2}, cache.page(1, Long.MIN_VALUE, Integer.MIN_VALUE, 2).ids);
+        TimelineCache.Slice slice = cache.page(1, 20, 2, 5);
+        Assert.assertArrayEquals(new int[]{5, 3}, slice.ids);
+        Assert.assertArrayEquals(new long[]{20, 30}, slice.times);
+        cache.remove(1, 2, 20);
+        Assert.assertArrayEquals(new int[]{5}, cache.page(1, 20, 2, 1).ids);
+        Assert.assertNull(cache.page(2, Long.MIN_VALUE, Integer.MIN_VALUE, 2));
+    }
+
+    /**
+     * The cache should evict the least recently viewed accounts to stay within its memory budget.
+     */
+    @Test
+    public void coldAccountsAreEvictedToStayWithinBudget() {
+        TimelineCache cache = new TimelineCache(4096);
+        int[] ids = new int[100];
+        long[] times = new long[100];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+            times[i] = i;
+        }
+        for (int account = 1; account <= 10; account++) {
+            cache.putIfUnchanged(account, ids.clone(), times.clone(), cache.stamp(account));
+            cache.get(1);
+        }
+        Assert.assertTrue(cache.memoryBytes() <= cache.maxBytes());
+        Assert.assertTrue(cache.evictionCount() > 0);
+        Assert.assertNotNull(cache.get(1));
+        Assert.assertNull(cache.get(2));
+    }
+
+    /**
+     * A rebuild that raced with a write to the same account should not be installed.
+     */
+    @Test
+    public void staleRebuildIsDropped() {
+        TimelineCache cache = new TimelineCache(4096);
+        long stamp = cache.stamp(1);
+        cache.add(1, 5, 500);
+        Assert.assertFalse(cache.putIfUnchanged(1, new int[]{1}, new long[]{100}, stamp));
+        Assert.assertNull(cache.get(1));
+        Assert.assertEquals(1, cache.staleRebuildsDroppedCount());
+    }
+
+    /**
+     * A write to one account should not drop a rebuild of an unrelated account, even one that shared a stamp
+     * stripe with it when there were only 64 stripes.
+     */
+    @Test
+    public void writeToOtherAccountKeepsRebuild() {
+        TimelineCache cache = new TimelineCache(4096);
+        long stamp = cache.stamp(1);
+        cache.add(65, 5, 500);
+        Assert.assertTrue(cache.putIfUnchanged(1, new int[]{1}, new long[]{100}, stamp));
+        Assert.assertEquals(0, cache.staleRebuildsDroppedCount());
+    }
+
+    /**
+     * Concurrent reads, patches, rebuilds and evictions across many accounts should keep the cache within its
+     * budget, and the memory it counts should go back to zero once every account is dropped.
+     */
+    @Test
+    public void concurrentUseKeepsMemoryAccountingExact() throws Exception {
+        TimelineCache cache = new TimelineCache(16 * 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int seed = t;
+                workers.add(executor.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        int account = (seed * 31 + i) % 64;
+                        switch (i % 4) {
+                            case 0:
+                                cache.putIfUnchanged(account, new int[]{i}, new long[]{i}, cache.stamp(account));
+                                break;
+                            case 1:
+                                cache.add(account, i, i);
+                                break;
+                            case 2:
+                                cache.page(account, Long.MIN_VALUE, Integer.MIN_VALUE, 10);
+                                break;
+                            default:
+                                cache.remove(account, i - 2, i - 2);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertTrue(cache.memoryBytes() <= cache.maxBytes());
+        for (int account = 0; account < 64; account++) {
+            cache.invalidate(account);
+        }
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.memoryBytes());
+    }
+
+    private List<Message> messages(int accountId) {
+        return messageService.getMessagesPageByUser(accountId, null, 100).messages;
+    }
+}
@@ -0,0 +1,55 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.TokenBucketLimiter;
+
+public class TokenBucketLimiterTest {
+    /**
+     * A key should get its burst at once and then be refused, without affecting other keys.
+     */
+    @Test
+    public void burstThenLimited() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(0.001, 3, 64);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(limiter.tryAcquire(1));
+        }
+        Assert.assertFalse(limiter.tryAcquire(1));
+        Assert.assertTrue(limiter.tryAcquire(2));
+        Assert.assertEquals(1, limiter.getLimitedCount());
+        Assert.assertEquals(0, limiter.availableTokens(1));
+        Assert.assertEquals(2, limiter.availableTokens(2));
+    }
+
+    /**
+     * Tokens should come back at the configured rate.
+     */
+    @Test
+    public void tokensRefill() throws InterruptedException {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(100, 1, 64);
+        Assert.assertTrue(limiter.tryAcquire(7));
+        Assert.assertFalse(limiter.tryAcquire(7));
+        Thread.sleep(30);
+        Assert.assertTrue(limiter.tryAcquire(7));
+    }
+
+    /**
+     * Far more keys than slots should pass through a small table, with the slots of idle accounts reused; accounts
+     * that stay over their rate keep their slot and stay limited.
+     */
+    @Test
+    public void idleBucketsAreEvicted() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1000, 1, 64);
+        for (int key = 0; key < 10_000; key++) {
+            Assert.assertTrue(limiter.tryAcquire(key));
+        }
+        Assert.assertEquals(64, limiter.capacity());
+        Assert.assertTrue(limiter.getEvictionCount() > 0);
+
+        TokenBucketLimiter slow = new TokenBucketLimiter(0.001, 1, 64);
+        Assert.assertTrue(slow.tryAcquire(42));
+        for (int key = 0; key < 10_000; key++) {
+            slow.tryAcquire(key);
+        }
+        Assert.assertFalse(slow.tryAcquire(42));
+    }
+}
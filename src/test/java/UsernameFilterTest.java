@@ -0,0 +1,95 @@
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.function.Consumer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Util.ScalableBloomFilter;
+
+public class UsernameFilterTest {
+    AccountDAO accountDAO;
+    AccountService accountService;
+
+    /**
+     * Before every test, create an AccountService over a mock AccountDAO whose account table holds testuser1.
+     */
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        accountDAO = mock(AccountDAO.class);
+        when(accountDAO.forEachUsername(any())).thenAnswer(invocation -> {
+            ((Consumer<String>) invocation.getArgument(0)).accept("testuser1");
+            return true;
+        });
+        when(accountDAO.getAccountByUsername("testuser1")).thenReturn(new Account(1, "testuser1", "password"));
+        accountService = new AccountService(accountDAO);
+    }
+
+    /**
+     * A username that was never registered should be reported free without querying the database.
+     */
+    @Test
+    public void unknownUsernameSkipsQuery() {
+        Assert.assertFalse(accountService.doesUsernameExist("brandnewuser"));
+        verify(accountDAO, never()).getAccountByUsername(anyString());
+    }
+
+    /**
+     * An existing username should be confirmed against the database.
+     */
+    @Test
+    public void existingUsernameIsQueried() {
+        Assert.assertTrue(accountService.doesUsernameExist("testuser1"));
+        verify(accountDAO, times(1)).getAccountByUsername("testuser1");
+    }
+
+    /**
+     * Once an account is created its username should no longer skip the query.
+     */
+    @Test
+    public void createdUsernameIsAddedToFilter() {
+        Account account = new Account("user2", "password");
+        when(accountDAO.createAccount(account)).thenReturn(new Account(2, "user2", "password"));
+        when(accountDAO.getAccountByUsername("user2")).thenReturn(new Account(2, "user2", "password"));
+
+        accountService.createAccount(account);
+        Assert.assertTrue(accountService.doesUsernameExist("user2"));
+        verify(accountDAO, times(1)).getAccountByUsername("user2");
+    }
+
+    /**
+     * The filter should never forget a value, keep its false-positive rate near the target as it grows past
+     * its initial capacity, and report its growth.
+     */
+    @Test
+    public void filterScalesPastExpectedInsertions() {
+        ScalableBloomFilter filter = new ScalableBloomFilter(1_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            Assert.assertTrue(filter.mightContain("user" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (filter.mightContain("absent" + i)) {
+                falsePositives++;
+            }
+        }
+        Assert.assertTrue("false positives: " + falsePositives, falsePositives < 2_000);
+        Assert.assertTrue(filter.stageCount() > 1);
+        Assert.assertEquals(10_000, filter.size());
+        Assert.assertTrue(filter.expectedFalsePositiveRate() < 0.02);
+    }
+}